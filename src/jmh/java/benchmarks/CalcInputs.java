@@ -0,0 +1,61 @@
+package benchmarks;
+
+import java.util.Random;
+
+public class CalcInputs {
+    private final static String[] OPERATORS = {" + ", " - ", " * "};
+    private final static String[] BLANKS = {" ", "\t", "\n", "\r\n"};
+    private final static int NESTING = 64;
+
+    private CalcInputs() {
+    }
+
+    public static String generate(final String shape, final int size) {
+        final Random random = new Random(size);
+        final StringBuilder res = new StringBuilder(size + 2 * NESTING + 16);
+        switch (shape) {
+            case "flat":
+                while (res.length() < size) {
+                    if (res.length() > 0) {
+                        res.append(OPERATORS[random.nextInt(OPERATORS.length)]);
+                    }
+                    res.append(1 + random.nextInt(99));
+                }
+                break;
+            case "nested":
+                while (res.length() < size) {
+                    if (res.length() > 0) {
+                        res.append(OPERATORS[random.nextInt(OPERATORS.length)]);
+                    }
+                    for (int i = 0; i < NESTING; ++i) {
+                        res.append('(');
+                    }
+                    res.append(1 + random.nextInt(99));
+                    for (int i = 0; i < NESTING; ++i) {
+                        res.append(')');
+                    }
+                }
+                break;
+            case "whitespace":
+                while (res.length() < size) {
+                    if (res.length() > 0) {
+                        appendBlanks(res, random);
+                        res.append(OPERATORS[random.nextInt(OPERATORS.length)].trim());
+                    }
+                    appendBlanks(res, random);
+                    res.append(1 + random.nextInt(99));
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown input shape: " + shape);
+        }
+        return res.toString();
+    }
+
+    private static void appendBlanks(final StringBuilder res, final Random random) {
+        final int count = 8 + random.nextInt(24);
+        for (int i = 0; i < count; ++i) {
+            res.append(BLANKS[random.nextInt(BLANKS.length)]);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package benchmarks;
+
+import calc.CalcLexer;
+import calc.CalcTokens;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import runtime.LexingException;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class CalcLexerBenchmark {
+    private final static int END = CalcTokens._END.ordinal();
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Tokens {
+        public long tokens;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            tokens = 0;
+        }
+    }
+
+    @Param({"1024", "1048576", "268435456"})
+    public int size;
+
+    @Param({"flat", "nested", "whitespace"})
+    public String shape;
+
+    private String input;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        input = CalcInputs.generate(shape, size);
+    }
+
+    @Benchmark
+    public long lex(final Tokens counter) throws LexingException {
+        final CalcLexer lexer = new CalcLexer(input);
+        long count = 0;
+        while (lexer.advance() != END) {
+            ++count;
+        }
+        counter.tokens += count;
+        return count;
+    }
+}
@@ -0,0 +1,46 @@
+package benchmarks;
+
+import calc.CalcLexer;
+import calc.CalcParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import runtime.LexingException;
+import runtime.ParsingException;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class CalcParserBenchmark {
+    @Param({"1024", "1048576", "268435456"})
+    public int size;
+
+    @Param({"flat", "nested", "whitespace"})
+    public String shape;
+
+    private String input;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        input = CalcInputs.generate(shape, size);
+    }
+
+    @Benchmark
+    public int parse() throws ParsingException, LexingException {
+        return new CalcParser(new CalcLexer(input)).mainRule();
+    }
+}
@@ -0,0 +1,94 @@
+package benchmarks;
+
+import generators.GeneratorOptions;
+import generators.LexerGenerator;
+import generators.ParserGenerator;
+import generators.SourceSink;
+import input.GrammarDescription;
+import input.InputLexer;
+import input.InputParser;
+import input.TokenRule;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class GrammarBenchmark {
+    private final static Path OUTPUT = Paths.get("Synthetic");
+
+    @Param({"100", "1000", "5000"})
+    public int rules;
+
+    private GrammarDescription grammar;
+    private List<String> skips;
+    private long emitted;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final InputParser parser = new InputParser(new CommonTokenStream(new InputLexer(CharStreams.fromString(synthetic(rules)))));
+        grammar = parser.grammarDescription().descr;
+        if (grammar.getError() != null) {
+            throw new IllegalStateException(grammar.getError());
+        }
+        skips = grammar.getSkips().stream().map(TokenRule::getName).collect(Collectors.toList());
+    }
+
+    private static String synthetic(final int rules) {
+        final StringBuilder res = new StringBuilder();
+        res.append("header {\npackage synthetic;\n}\n\ntokens [\n");
+        res.append("    WS := \"[ \\t\\n]+\";\n");
+        res.append("    ID := \"[a-z][a-z0-9]*\";\n");
+        for (int i = 0; i < rules; ++i) {
+            res.append("    T").append(i).append(" := \"#").append(i).append("\";\n");
+        }
+        res.append("]\n\nignore [\n    WS\n]\n\nstart = R0;\n\nrules [\n");
+        for (int i = 0; i < rules; ++i) {
+            final int next = (i + 1) % rules;
+            res.append("    R").append(i).append("() -> res : int\n");
+            res.append("        := a=T").append(i).append(" b=R").append(next).append("() {res = b + 1;}\n");
+            res.append("        |  c=ID d=T").append((i + 1) % rules).append(" {res = 1;}\n");
+            res.append("        |  EPS {res = 0;}\n");
+            res.append("        ;\n");
+        }
+        res.append("]\n");
+        return res.toString();
+    }
+
+    @Benchmark
+    public GrammarDescription analyze() {
+        return new GrammarDescription(grammar.getHeader(), grammar.getTokenRules(), skips,
+                grammar.getStart().getName(), grammar.getParserRules());
+    }
+
+    @Benchmark
+    public long emit() throws Exception {
+        emitted = 0;
+        final SourceSink sink = (path, content) -> emitted += content.length();
+        final GeneratorOptions options = new GeneratorOptions();
+        new LexerGenerator(OUTPUT, "Synthetic", grammar, options, sink).generate();
+        new ParserGenerator(OUTPUT, "Synthetic", grammar, options, sink).generate();
+        return emitted;
+    }
+}
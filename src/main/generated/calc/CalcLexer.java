@@ -1,70 +1,383 @@
 
 package calc;
 
-import java.nio.file.Files;
-import java.util.Map;
-import java.util.HashMap;
-import java.util.stream.Collectors;
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
-import java.util.Arrays;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import runtime.ArrayInput;
+import runtime.CharDispatch;
+import runtime.CharInput;
+import runtime.LineIndex;
+import runtime.MappedInput;
+import runtime.ParallelLexer;
+import runtime.StreamInput;
+import runtime.TextInput;
+import runtime.TokenCursor;
 import runtime.TokenData;
 import runtime.LexingException;
-import java.nio.file.Path;
 
-public class CalcLexer {
+public class CalcLexer implements TokenCursor, Closeable {
     private final static Token _END_ = new Token(CalcTokens._END, new TokenData("_END", ""));
-    private final Pattern ignore;
-    private final Matcher matcher;
-    private String text;
-    private final Map<CalcTokens, Pattern> tokens;
+    private final static CalcTokens[] TYPES = CalcTokens.values();
+    private final static int END = CalcTokens._END.ordinal();
+    private CharInput input;
+    private int pos;
+    private int type;
+    private int start;
+    private int end;
+    private final static int[] RULE_TYPES = {-1, -1, 0, 1, 2, 3, 4, 5, 6};
+    private final static CharDispatch SKIPS = new CharDispatch(
+            "\u0000\u0001",
+            new String[] {
+                    "\u0009\u0009  ",
+                    "\n\n\r\r",
+            });
+    private final static CharDispatch TOKENS = new CharDispatch(
+            "\u0002\u0003\u0004\u0005\u0006\u0007\u0008",
+            new String[] {
+                    "19",
+                    "++",
+                    "--",
+                    "**",
+                    "^^",
+                    "((",
+                    "))",
+            });
 
     public CalcLexer(final Path input) throws IOException {
-        this.ignore = Pattern.compile("([ \t]+)|([\n\r]+)");
-        this.matcher = Pattern.compile("").matcher("");
-        this.text = Files.newBufferedReader(input).lines().collect(Collectors.joining());
-        this.tokens = new HashMap<>();
-        this.tokens.put(CalcTokens.NUMBER, Pattern.compile("[1-9][0-9]*"));
-        this.tokens.put(CalcTokens.PLUS, Pattern.compile("[+]"));
-        this.tokens.put(CalcTokens.MINUS, Pattern.compile("[-]"));
-        this.tokens.put(CalcTokens.MULT, Pattern.compile("[*]"));
-        this.tokens.put(CalcTokens.POW, Pattern.compile("[\\^]"));
-        this.tokens.put(CalcTokens.LP, Pattern.compile("[(]"));
-        this.tokens.put(CalcTokens.RP, Pattern.compile("[)]"));
+        this(input, StandardCharsets.UTF_8);
     }
 
-    public Token getNext() throws LexingException {
-        matcher.usePattern(ignore);
-        matcher.reset(text);
-        while (matcher.lookingAt()) {
-            text = text.substring(matcher.end());
-            matcher.reset(text);
-        }
-        final String curText = text;
-        boolean matched = Arrays.stream(CalcTokens.values()).filter(type -> (type != CalcTokens._END)).map(tokens::get).anyMatch(regex -> {
-            matcher.usePattern(regex);
-            matcher.reset(curText);
-            return matcher.lookingAt();
-        });
-        if (!matched) {
-            if (text.isEmpty()) {
-                return _END_;
-            } else {
-                throw new LexingException("Unmatched data in input: \"" + text + "\"");
+    public CalcLexer(final Path input, final Charset charset) throws IOException {
+        this(MappedInput.open(input, charset));
+    }
+
+    public CalcLexer(final InputStream input) {
+        this(new InputStreamReader(input, StandardCharsets.UTF_8));
+    }
+
+    public CalcLexer(final ReadableByteChannel input) {
+        this(Channels.newReader(input, StandardCharsets.UTF_8.newDecoder(), -1));
+    }
+
+    public CalcLexer(final Reader input) {
+        this(new StreamInput(input));
+    }
+
+    public CalcLexer(final CharSequence input) {
+        this(new TextInput(input));
+    }
+
+    public CalcLexer(final char[] input) {
+        this(new ArrayInput(input));
+    }
+
+    public CalcLexer(final CharInput input) {
+        this.input = input;
+        this.pos = 0;
+    }
+
+    public void reset(final CharSequence input) {
+        reset(new TextInput(input));
+    }
+
+    public void reset(final char[] input) {
+        reset(new ArrayInput(input));
+    }
+
+    public void reset(final char[] input, final int from, final int to) {
+        reset(new ArrayInput(input, from, to));
+    }
+
+    public void reset(final CharInput input) {
+        this.input = input;
+        this.pos = 0;
+        this.type = 0;
+        this.start = 0;
+        this.end = 0;
+    }
+
+    private final static String BOUNDARIES = "\u0009\n\r\r  ";
+
+    private static String[] names() {
+        final String[] names = new String[TYPES.length];
+        for (int i = 0; i < names.length; ++i) {
+            names[i] = TYPES[i].name();
+        }
+        return names;
+    }
+
+    public static ParallelLexer parallel(final CharSequence input, final ForkJoinPool pool) throws LexingException {
+        return new ParallelLexer(CalcLexer::new, names(), END, BOUNDARIES, input, pool);
+    }
+
+    public static ParallelLexer parallel(final Path input, final Charset charset, final ForkJoinPool pool) throws IOException, LexingException {
+        return new ParallelLexer(CalcLexer::new, names(), END, BOUNDARIES, input, charset, pool);
+    }
+
+    private int matchWS1(int p) throws IOException {
+        char c;
+        if (p == input.length() && !input.fill()) {
+            return -1;
+        }
+        c = input.charAt(p);
+        if (!(c == '\t' || c == ' ')) {
+            return -1;
+        }
+        ++p;
+        while (p < input.length() || input.fill()) {
+            c = input.charAt(p);
+            if (!(c == '\t' || c == ' ')) {
+                break;
+            }
+            ++p;
+        }
+        return p;
+    }
+
+    private int matchWS2(int p) throws IOException {
+        char c;
+        if (p == input.length() && !input.fill()) {
+            return -1;
+        }
+        c = input.charAt(p);
+        if (!(c == '\n' || c == '\r')) {
+            return -1;
+        }
+        ++p;
+        while (p < input.length() || input.fill()) {
+            c = input.charAt(p);
+            if (!(c == '\n' || c == '\r')) {
+                break;
             }
-        } else {
-            for (final CalcTokens type : CalcTokens.values()) {
-                final Pattern regex = tokens.get(type);
-                matcher.usePattern(regex);
-                matcher.reset(text);
-                if (matcher.lookingAt()) {
-                    final String curMatch = text.substring(0, matcher.end());
-                    text = text.substring(curMatch.length());
-                    return new Token(type, new TokenData(type.name(), curMatch));
+            ++p;
+        }
+        return p;
+    }
+
+    private int matchNUMBER(int p) throws IOException {
+        char c;
+        if (p == input.length() && !input.fill()) {
+            return -1;
+        }
+        c = input.charAt(p);
+        if (!(c >= '1' && c <= '9')) {
+            return -1;
+        }
+        ++p;
+        while (p < input.length() || input.fill()) {
+            c = input.charAt(p);
+            if (!(c >= '0' && c <= '9')) {
+                break;
+            }
+            ++p;
+        }
+        return p;
+    }
+
+    private int matchPLUS(int p) throws IOException {
+        char c;
+        if (p == input.length() && !input.fill()) {
+            return -1;
+        }
+        c = input.charAt(p);
+        if (!(c == '+')) {
+            return -1;
+        }
+        ++p;
+        return p;
+    }
+
+    private int matchMINUS(int p) throws IOException {
+        char c;
+        if (p == input.length() && !input.fill()) {
+            return -1;
+        }
+        c = input.charAt(p);
+        if (!(c == '-')) {
+            return -1;
+        }
+        ++p;
+        return p;
+    }
+
+    private int matchMULT(int p) throws IOException {
+        char c;
+        if (p == input.length() && !input.fill()) {
+            return -1;
+        }
+        c = input.charAt(p);
+        if (!(c == '*')) {
+            return -1;
+        }
+        ++p;
+        return p;
+    }
+
+    private int matchPOW(int p) throws IOException {
+        char c;
+        if (p == input.length() && !input.fill()) {
+            return -1;
+        }
+        c = input.charAt(p);
+        if (!(c == '^')) {
+            return -1;
+        }
+        ++p;
+        return p;
+    }
+
+    private int matchLP(int p) throws IOException {
+        char c;
+        if (p == input.length() && !input.fill()) {
+            return -1;
+        }
+        c = input.charAt(p);
+        if (!(c == '(')) {
+            return -1;
+        }
+        ++p;
+        return p;
+    }
+
+    private int matchRP(int p) throws IOException {
+        char c;
+        if (p == input.length() && !input.fill()) {
+            return -1;
+        }
+        c = input.charAt(p);
+        if (!(c == ')')) {
+            return -1;
+        }
+        ++p;
+        return p;
+    }
+
+    private int match(final int rule, final int from) throws IOException {
+        switch (rule) {
+            case 0:
+                return matchWS1(from);
+            case 1:
+                return matchWS2(from);
+            case 2:
+                return matchNUMBER(from);
+            case 3:
+                return matchPLUS(from);
+            case 4:
+                return matchMINUS(from);
+            case 5:
+                return matchMULT(from);
+            case 6:
+                return matchPOW(from);
+            case 7:
+                return matchLP(from);
+            case 8:
+                return matchRP(from);
+            default:
+                return -1;
+        }
+    }
+
+    private int nextToken() throws IOException, LexingException {
+        pos = input.release(pos);
+        skip:
+        while (pos < input.length() || input.fill()) {
+            for (final char rule : SKIPS.candidates(input.charAt(pos))) {
+                final int matched = match(rule, pos);
+                if (matched > pos) {
+                    pos = matched;
+                    continue skip;
                 }
             }
+            break;
+        }
+        start = pos;
+        end = pos;
+        if (pos == input.length() && !input.fill()) {
+            return END;
+        }
+        for (final char rule : TOKENS.candidates(input.charAt(pos))) {
+            final int matched = match(rule, pos);
+            if (matched >= 0) {
+                pos = matched;
+                end = pos;
+                return RULE_TYPES[rule];
+            }
+        }
+        throw LexingException.unmatched(input, pos);
+    }
+
+    @Override
+    public int advance() throws LexingException {
+        try {
+            type = nextToken();
+            return type;
+        } catch (IOException e) {
+            throw new LexingException(e);
         }
-        return null;
+    }
+
+    @Override
+    public int getTypeId() {
+        return type;
+    }
+
+    public CalcTokens getType() {
+        return TYPES[type];
+    }
+
+    @Override
+    public long getStart() {
+        return input.getOffset() + start;
+    }
+
+    @Override
+    public long getEnd() {
+        return input.getOffset() + end;
+    }
+
+    public CharSequence getText() {
+        return input.subSequence(start, end);
+    }
+
+    @Override
+    public LineIndex getLines() {
+        return input.getLines();
+    }
+
+    @Override
+    public TokenData getData() {
+        if (input.isStable()) {
+            return new TokenData(TYPES[type].name(), input, start, end);
+        }
+        return new TokenData(TYPES[type].name(), input.subSequence(start, end).toString(), getStart());
+    }
+
+    public boolean isStable() {
+        return input.isStable();
+    }
+
+    public TokenData getData(final int type, final long start, final long end) {
+        return new TokenData(TYPES[type].name(), input, (int) start, (int) end);
+    }
+
+    public Token getNext() throws LexingException {
+        if (advance() == END) {
+            return _END_;
+        }
+        return new Token(TYPES[type], getData());
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
     }
 }
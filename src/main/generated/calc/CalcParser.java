@@ -2,242 +2,283 @@
 package calc;
 
 
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import runtime.BatchParser;
+import runtime.CharInput;
+import runtime.MappedInput;
+import runtime.PipelinedCursor;
+import runtime.TokenCursor;
 import runtime.TokenData;
 import runtime.LexingException;
 import runtime.ParsingException;
 
-public class CalcParser {
-    private final CalcLexer lexer;
-    private Token curToken;
+public class CalcParser implements Closeable {
+    private final static CalcTokens[] TYPES = CalcTokens.values();
+    private final TokenCursor lexer;
+    private final PipelinedCursor pipeline;
+    private CalcTokens curType;
 
-    public CalcParser(final CalcLexer lexer) {
+    public CalcParser(final TokenCursor lexer) {
+        this(lexer, null);
+    }
+
+    private CalcParser(final TokenCursor lexer, final PipelinedCursor pipeline) {
         this.lexer = lexer;
-        this.curToken = null;
+        this.pipeline = pipeline;
+        this.curType = null;
+    }
+
+    public static CalcParser pipelined(final CalcLexer lexer) {
+        final int end = CalcTokens._END.ordinal();
+        final PipelinedCursor pipeline = new PipelinedCursor(lexer, end, lexer.isStable() ? lexer::getData : null);
+        return new CalcParser(pipeline, pipeline);
     }
 
-    public Integer mainRule() throws ParsingException, LexingException {
-        curToken = lexer.getNext();
-        final Integer res = parseS();
-        if (curToken.type != CalcTokens._END) {
-            throw new ParsingException("Expected end of input but found " + curToken.data.getName());
+    @Override
+    public void close() {
+        if (pipeline != null) {
+            pipeline.close();
         }
-        return res;
     }
 
-    private Integer parseS() throws ParsingException, LexingException {
-        Integer res = null;
-        switch (curToken.type) {
+    public static BatchParser<Path, Integer> batch(final ForkJoinPool pool) {
+        return new BatchParser<>(() -> {
+            final CalcLexer lexer = new CalcLexer("");
+            final CalcParser parser = new CalcParser(lexer);
+            return path -> {
+                try (final CharInput input = MappedInput.open(path, StandardCharsets.UTF_8)) {
+                    lexer.reset(input);
+                    return parser.mainRule();
+                }
+            };
+        }, pool);
+    }
+
+    public int mainRule() throws ParsingException, LexingException {
+        try {
+            curType = TYPES[lexer.advance()];
+            final int res = parseS();
+            if (curType != CalcTokens._END) {
+                throw ParsingException.trailing(lexer, curType.name());
+            }
+            return res;
+        } catch (final Throwable e) {
+            close();
+            throw e;
+        }
+    }
+
+    private int parseS() throws ParsingException, LexingException {
+        int res = 0;
+        switch (curType) {
             case NUMBER:
-            case LP:
-            case MINUS: {
+            case MINUS:
+            case LP: {
                 
-                Integer head = parseT();
+                int head = parseT();
                 
-                Integer tail = parseX(head);
+                int tail = parseX(head);
                 res = tail;
                 break;
             }
             default: {
-                throw new ParsingException("Expected NUMBER, LP, MINUS but found " + curToken.type.name());
+                throw ParsingException.unexpected(lexer, "NUMBER, MINUS, LP", curType.name());
             }
         }
         return res;
     }
 
-    private Integer parseX(Integer acc) throws ParsingException, LexingException {
-        Integer val = null;
-        switch (curToken.type) {
-            case PLUS: {
-                
-                if (curToken.type != CalcTokens.PLUS) {
-                    throw new LexingException("Expected PLUS but found " + curToken.type.name());
+    private int parseX(int acc) throws ParsingException, LexingException {
+        while (true) {
+            int val = 0;
+            switch (curType) {
+                case PLUS: {
+                    
+                    if (curType != CalcTokens.PLUS) {
+                        throw LexingException.unexpected(lexer, "PLUS", curType.name());
+                    }
+                    
+                    curType = TYPES[lexer.advance()];
+                    int head = parseT();
+                    int nextAcc = acc + head;
+                    acc = nextAcc;
+                    continue;
                 }
-                TokenData p = curToken.data;
-                
-                curToken = lexer.getNext();
-                Integer head = parseT();
-                Integer nextAcc = acc + head;
-                Integer tail = parseX(nextAcc);
-                val = tail;
-                break;
-            }
-            case MINUS: {
-                
-                if (curToken.type != CalcTokens.MINUS) {
-                    throw new LexingException("Expected MINUS but found " + curToken.type.name());
+                case MINUS: {
+                    
+                    if (curType != CalcTokens.MINUS) {
+                        throw LexingException.unexpected(lexer, "MINUS", curType.name());
+                    }
+                    
+                    curType = TYPES[lexer.advance()];
+                    int head = parseT();
+                    int nextAcc = acc - head;
+                    acc = nextAcc;
+                    continue;
+                }
+                case RP:
+                case _END: {
+                    
+                    val = acc;
+                    break;
+                }
+                default: {
+                    throw ParsingException.unexpected(lexer, "PLUS, MINUS, RP, _END", curType.name());
                 }
-                TokenData m = curToken.data;
-                
-                curToken = lexer.getNext();
-                Integer head = parseT();
-                Integer nextAcc = acc - head;
-                Integer tail = parseX(nextAcc);
-                val = tail;
-                break;
-            }
-            case _END:
-            case RP: {
-                
-                val = acc;
-                break;
-            }
-            default: {
-                throw new ParsingException("Expected PLUS, MINUS, _END, RP but found " + curToken.type.name());
             }
+            return val;
         }
-        return val;
     }
 
-    private Integer parseT() throws ParsingException, LexingException {
-        Integer val = null;
-        switch (curToken.type) {
+    private int parseT() throws ParsingException, LexingException {
+        int val = 0;
+        switch (curType) {
             case NUMBER:
-            case LP:
-            case MINUS: {
+            case MINUS:
+            case LP: {
                 
-                Integer head = parseF();
+                int head = parseF();
                 
-                Integer tail = parseY(head);
+                int tail = parseY(head);
                 val = tail;
                 break;
             }
             default: {
-                throw new ParsingException("Expected NUMBER, LP, MINUS but found " + curToken.type.name());
+                throw ParsingException.unexpected(lexer, "NUMBER, MINUS, LP", curType.name());
             }
         }
         return val;
     }
 
-    private Integer parseY(Integer acc) throws ParsingException, LexingException {
-        Integer val = null;
-        switch (curToken.type) {
-            case MULT: {
-                
-                if (curToken.type != CalcTokens.MULT) {
-                    throw new LexingException("Expected MULT but found " + curToken.type.name());
+    private int parseY(int acc) throws ParsingException, LexingException {
+        while (true) {
+            int val = 0;
+            switch (curType) {
+                case MULT: {
+                    
+                    if (curType != CalcTokens.MULT) {
+                        throw LexingException.unexpected(lexer, "MULT", curType.name());
+                    }
+                    
+                    curType = TYPES[lexer.advance()];
+                    int head = parseF();
+                    int nextAcc = acc * head;
+                    acc = nextAcc;
+                    continue;
+                }
+                case PLUS:
+                case MINUS:
+                case RP:
+                case _END: {
+                    
+                    val = acc;
+                    break;
+                }
+                default: {
+                    throw ParsingException.unexpected(lexer, "MULT, PLUS, MINUS, RP, _END", curType.name());
                 }
-                TokenData m = curToken.data;
-                
-                curToken = lexer.getNext();
-                Integer head = parseF();
-                Integer nextAcc = acc * head;
-                Integer tail = parseY(nextAcc);
-                val = tail;
-                break;
-            }
-            case _END:
-            case RP:
-            case PLUS:
-            case MINUS: {
-                
-                val = acc;
-                break;
-            }
-            default: {
-                throw new ParsingException("Expected MULT, _END, RP, PLUS, MINUS but found " + curToken.type.name());
             }
+            return val;
         }
-        return val;
     }
 
-    private Integer parseF() throws ParsingException, LexingException {
-        Integer val = null;
-        switch (curToken.type) {
+    private int parseF() throws ParsingException, LexingException {
+        int val = 0;
+        switch (curType) {
             case NUMBER:
-            case LP:
-            case MINUS: {
+            case MINUS:
+            case LP: {
                 
-                Integer head = parseW();
+                int head = parseW();
                 
-                Integer tail = parseQ();
-                val = (int) Math.pow(head.doubleValue(), tail.doubleValue());
+                int tail = parseQ();
+                val = (int) Math.pow(head, tail);
                 break;
             }
             default: {
-                throw new ParsingException("Expected NUMBER, LP, MINUS but found " + curToken.type.name());
+                throw ParsingException.unexpected(lexer, "NUMBER, MINUS, LP", curType.name());
             }
         }
         return val;
     }
 
-    private Integer parseQ() throws ParsingException, LexingException {
-        Integer val = null;
-        switch (curToken.type) {
+    private int parseQ() throws ParsingException, LexingException {
+        int val = 0;
+        switch (curType) {
             case POW: {
                 
-                if (curToken.type != CalcTokens.POW) {
-                    throw new LexingException("Expected POW but found " + curToken.type.name());
+                if (curType != CalcTokens.POW) {
+                    throw LexingException.unexpected(lexer, "POW", curType.name());
                 }
-                TokenData p = curToken.data;
                 
-                curToken = lexer.getNext();
-                Integer head = parseW();
+                curType = TYPES[lexer.advance()];
+                int head = parseW();
                 
-                Integer tail = parseQ();
-                val = (int) Math.pow(head.doubleValue(), tail.doubleValue());
+                int tail = parseQ();
+                val = (int) Math.pow(head, tail);
                 break;
             }
-            case _END:
+            case PLUS:
+            case MINUS:
             case MULT:
             case RP:
-            case PLUS:
-            case MINUS: {
+            case _END: {
                 
                 val = 1;
                 break;
             }
             default: {
-                throw new ParsingException("Expected POW, _END, MULT, RP, PLUS, MINUS but found " + curToken.type.name());
+                throw ParsingException.unexpected(lexer, "POW, PLUS, MINUS, MULT, RP, _END", curType.name());
             }
         }
         return val;
     }
 
-    private Integer parseW() throws ParsingException, LexingException {
-        Integer val = null;
-        switch (curToken.type) {
+    private int parseW() throws ParsingException, LexingException {
+        int val = 0;
+        switch (curType) {
             case MINUS: {
                 
-                if (curToken.type != CalcTokens.MINUS) {
-                    throw new LexingException("Expected MINUS but found " + curToken.type.name());
+                if (curType != CalcTokens.MINUS) {
+                    throw LexingException.unexpected(lexer, "MINUS", curType.name());
                 }
-                TokenData m = curToken.data;
                 
-                curToken = lexer.getNext();
-                Integer tail = parseW();
+                curType = TYPES[lexer.advance()];
+                int tail = parseW();
                 val = -1 * tail;
                 break;
             }
             case NUMBER: {
                 
-                if (curToken.type != CalcTokens.NUMBER) {
-                    throw new LexingException("Expected NUMBER but found " + curToken.type.name());
+                if (curType != CalcTokens.NUMBER) {
+                    throw LexingException.unexpected(lexer, "NUMBER", curType.name());
                 }
-                TokenData num = curToken.data;
-                val = new Integer(num.getText());
-                curToken = lexer.getNext();
+                TokenData num = lexer.getData();
+                val = Integer.parseInt(num.getText());
+                curType = TYPES[lexer.advance()];
                 break;
             }
             case LP: {
                 
-                if (curToken.type != CalcTokens.LP) {
-                    throw new LexingException("Expected LP but found " + curToken.type.name());
+                if (curType != CalcTokens.LP) {
+                    throw LexingException.unexpected(lexer, "LP", curType.name());
                 }
-                TokenData l = curToken.data;
                 
-                curToken = lexer.getNext();
-                Integer mid = parseS();
+                curType = TYPES[lexer.advance()];
+                int mid = parseS();
                 
-                if (curToken.type != CalcTokens.RP) {
-                    throw new LexingException("Expected RP but found " + curToken.type.name());
+                if (curType != CalcTokens.RP) {
+                    throw LexingException.unexpected(lexer, "RP", curType.name());
                 }
-                TokenData r = curToken.data;
                 val = mid;
-                curToken = lexer.getNext();
+                curType = TYPES[lexer.advance()];
                 break;
             }
             default: {
-                throw new ParsingException("Expected MINUS, NUMBER, LP but found " + curToken.type.name());
+                throw ParsingException.unexpected(lexer, "MINUS, NUMBER, LP", curType.name());
             }
         }
         return val;
@@ -1,50 +1,217 @@
+import generators.GeneratorOptions;
 import generators.LexerGenerator;
+import generators.Manifest;
 import generators.ParserGenerator;
+import generators.Profile;
+import generators.SourceSink;
+import generators.TableParserGenerator;
 import input.GrammarDescription;
 import input.InputLexer;
 import input.InputParser;
+import org.antlr.v4.runtime.BaseErrorListener;
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
 
-import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 public class Generator {
+    private static class SyntaxErrors extends BaseErrorListener {
+        private final List<String> messages = new ArrayList<>();
+
+        @Override
+        public synchronized void syntaxError(final Recognizer<?, ?> recognizer, final Object offendingSymbol,
+                                             final int line, final int position, final String message,
+                                             final RecognitionException e) {
+            messages.add("line " + line + ":" + position + " " + message);
+        }
+    }
+
+    private interface Step {
+        void run() throws Exception;
+    }
+
     public static void main(String[] args) {
-        if (args.length != 2) {
-            System.err.println("Expected 2 args: <grammar> <output_directory>");
+        final GeneratorOptions options = new GeneratorOptions();
+        final List<String> positional = new ArrayList<>();
+        for (final String arg : args) {
+            if (!arg.startsWith("--")) {
+                positional.add(arg);
+            } else if (!options.parse(arg)) {
+                System.err.println("Unknown option: " + arg);
+                return;
+            }
+        }
+        if ((options.isTableParser() ? 1 : 0) + (options.isIncremental() ? 1 : 0) + (options.isBacktracking() ? 1 : 0) > 1) {
+            System.err.println("Options --table, --incremental and --backtrack cannot be combined");
             return;
         }
-
-        Path input = null;
-        Path output = null;
-        InputLexer lexer = null;
+        if (options.isTableParser() && options.isInstrumented()) {
+            System.err.println("Option --instrument is not supported by the table parser");
+            return;
+        }
+        if (options.getProfilePath() != null) {
+            try {
+                options.setProfile(Profile.load(Paths.get(options.getProfilePath())));
+            } catch (Exception e) {
+                report(null, e);
+                return;
+            }
+        }
+        final List<String> paths = new ArrayList<>();
         try {
-            input = Paths.get(args[0]);
-            output = Paths.get(args[1]);
-            lexer = new InputLexer(CharStreams.fromPath(input));
+            for (final String arg : positional) {
+                if (arg.startsWith("@")) {
+                    for (final String line : Files.readAllLines(Paths.get(arg.substring(1)), StandardCharsets.UTF_8)) {
+                        if (!line.trim().isEmpty() && !line.trim().startsWith("#")) {
+                            paths.addAll(Arrays.asList(line.trim().split("\\s+")));
+                        }
+                    }
+                } else {
+                    paths.add(arg);
+                }
+            }
         } catch (Exception e) {
             e.printStackTrace();
             return;
         }
-        InputParser parser = new InputParser(new CommonTokenStream(lexer));
-        final GrammarDescription grammar = parser.grammarDescription().descr;
-        if (grammar.getError() != null) {
-            System.err.println(grammar.getError().getMessage());
+        if (paths.isEmpty() || paths.size() % 2 != 0) {
+            System.err.println("Expected 2 args: [--dfa] [--table] [--incremental] [--backtrack] [--instrument]"
+                    + " [--profile=<file>] [--force] <grammar> <output_directory>"
+                    + " [<grammar> <output_directory> ...] or @<batch_file>");
             return;
         }
+
+        final ForkJoinPool pool = new ForkJoinPool();
         try {
-            Files.createDirectories(output);
-            final String name = input.getName(input.getNameCount() - 1).toString();
-            final LexerGenerator lexerGenerator = new LexerGenerator(output, name, grammar);
-            lexerGenerator.generate();
-            final ParserGenerator parserGenerator = new ParserGenerator(output, name, grammar);
-            parserGenerator.generate();
-        } catch (Exception e) {
+            if (paths.size() == 2) {
+                try {
+                    generate(options, Paths.get(paths.get(0)), Paths.get(paths.get(1)), pool);
+                } catch (Exception e) {
+                    report(null, e);
+                }
+                return;
+            }
+            final List<Future<Exception>> jobs = new ArrayList<>();
+            for (int i = 0; i < paths.size(); i += 2) {
+                final Path input = Paths.get(paths.get(i));
+                final Path output = Paths.get(paths.get(i + 1));
+                jobs.add(submit(pool, () -> generate(options, input, output, pool)));
+            }
+            int failed = 0;
+            for (int i = 0; i < jobs.size(); ++i) {
+                try {
+                    await(jobs.get(i));
+                } catch (Exception e) {
+                    report(paths.get(2 * i), e);
+                    ++failed;
+                }
+            }
+            if (failed > 0) {
+                System.err.println(failed + " of " + jobs.size() + " grammars failed");
+                System.exit(1);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void report(final String grammar, final Exception e) {
+        final String prefix = grammar == null ? "" : grammar + ": ";
+        if (e.getClass() == Exception.class) {
+            System.err.println(prefix + e.getMessage());
+        } else {
+            System.err.print(prefix);
             e.printStackTrace();
         }
     }
 
+    private static Future<Exception> submit(final ForkJoinPool pool, final Step step) {
+        return pool.submit(() -> {
+            try {
+                step.run();
+                return null;
+            } catch (Exception e) {
+                return e;
+            }
+        });
+    }
+
+    private static void await(final Future<Exception> task) throws Exception {
+        final Exception failure = task.get();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static void generate(final GeneratorOptions options, final Path input, final Path output,
+                                 final ForkJoinPool pool) throws Exception {
+        final String name = input.getName(input.getNameCount() - 1).toString();
+        final byte[] source = Files.readAllBytes(input);
+        final Manifest manifest = new Manifest(output, name, source, options);
+        if (!options.isForce() && manifest.isUpToDate()) {
+            return;
+        }
+        final SyntaxErrors errors = new SyntaxErrors();
+        final InputLexer lexer = new InputLexer(CharStreams.fromString(new String(source, StandardCharsets.UTF_8), input.toString()));
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(errors);
+        final InputParser parser = new InputParser(new CommonTokenStream(lexer));
+        parser.removeErrorListeners();
+        parser.addErrorListener(errors);
+        GrammarDescription grammar = null;
+        RuntimeException failure = null;
+        try {
+            grammar = parser.grammarDescription().descr;
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        if (!errors.messages.isEmpty()) {
+            throw new Exception(String.join("\n", errors.messages));
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        if (grammar.getError() != null) {
+            throw new Exception(grammar.getError().getMessage());
+        }
+        if (!grammar.isLL1() && !options.isBacktracking()) {
+            throw new Exception("Not LL1 grammar");
+        }
+
+        final Map<Path, String> sources = new ConcurrentHashMap<>();
+        final SourceSink sink = sources::put;
+        final LexerGenerator lexerGenerator = new LexerGenerator(output, name, grammar, options, sink);
+        final Future<Exception> lexerTask = submit(pool, lexerGenerator::generate);
+        try {
+            if (options.isTableParser()) {
+                final TableParserGenerator parserGenerator = new TableParserGenerator(output, name, grammar, sink);
+                parserGenerator.generate();
+            } else {
+                final ParserGenerator parserGenerator = new ParserGenerator(output, name, grammar, options, sink);
+                parserGenerator.generate();
+            }
+        } catch (Exception e) {
+            lexerTask.get();
+            throw e;
+        }
+        await(lexerTask);
+        Files.createDirectories(output);
+        for (final Map.Entry<Path, String> generated : new TreeMap<>(sources).entrySet()) {
+            SourceSink.FILES.write(generated.getKey(), generated.getValue());
+        }
+        manifest.write(Arrays.asList(name + "Tokens.java", "Token.java", name + "Lexer.java", name + "Parser.java"));
+    }
 }
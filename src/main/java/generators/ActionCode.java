@@ -0,0 +1,98 @@
+package generators;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class ActionCode {
+    public static class Declaration {
+        private final String type;
+        private final String name;
+
+        Declaration(final String type, final String name) {
+            this.type = type;
+            this.name = name;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    private final static Pattern DECLARATION = Pattern.compile(
+            "(\\s*)(?:final\\s+)?([\\w$.]+(?:\\s*<[\\w$.,<>?\\s\\[\\]]*>)?(?:\\s*\\[\\s*])*)\\s+([\\w$]+)\\s*(?:=([\\s\\S]*))?;\\s*");
+    private final static Set<String> KEYWORDS = new HashSet<>(Arrays.asList(
+            "return", "throw", "new", "else", "case", "assert", "break", "continue", "do", "yield"));
+
+    private final List<Declaration> declarations;
+    private final String code;
+
+    private ActionCode(final List<Declaration> declarations, final String code) {
+        this.declarations = declarations;
+        this.code = code;
+    }
+
+    public static ActionCode hoist(final String code) {
+        final List<Declaration> declarations = new ArrayList<>();
+        final StringBuilder res = new StringBuilder();
+        for (final String statement : splitStatements(code)) {
+            final Matcher matcher = DECLARATION.matcher(statement);
+            if (!matcher.matches() || KEYWORDS.contains(matcher.group(2))) {
+                res.append(statement);
+                continue;
+            }
+            declarations.add(new Declaration(matcher.group(2), matcher.group(3)));
+            if (matcher.group(4) != null) {
+                res.append(matcher.group(1)).append(matcher.group(3)).append(" =").append(matcher.group(4)).append(';');
+            }
+        }
+        return new ActionCode(declarations, res.toString());
+    }
+
+    private static List<String> splitStatements(final String code) {
+        final List<String> res = new ArrayList<>();
+        int depth = 0;
+        int from = 0;
+        for (int i = 0; i < code.length(); ++i) {
+            final char c = code.charAt(i);
+            if (c == '"' || c == '\'') {
+                ++i;
+                while (i < code.length() && code.charAt(i) != c) {
+                    if (code.charAt(i) == '\\') {
+                        ++i;
+                    }
+                    ++i;
+                }
+            } else if (c == '(' || c == '[' || c == '{') {
+                ++depth;
+            } else if (c == ')' || c == ']' || c == '}') {
+                --depth;
+                if (c == '}' && depth == 0) {
+                    res.add(code.substring(from, i + 1));
+                    from = i + 1;
+                }
+            } else if (c == ';' && depth == 0) {
+                res.add(code.substring(from, i + 1));
+                from = i + 1;
+            }
+        }
+        res.add(code.substring(from));
+        return res;
+    }
+
+    public List<Declaration> getDeclarations() {
+        return declarations;
+    }
+
+    public String getCode() {
+        return code;
+    }
+}
@@ -0,0 +1,107 @@
+package generators;
+
+import runtime.LexingException;
+import runtime.ParsingException;
+import runtime.TokenCursor;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CompiledGrammar {
+    private final String hash;
+    private final Class<?> lexerClass;
+    private final Class<?> parserClass;
+    private final MethodHandle lexerConstructor;
+    private final MethodHandle parserConstructor;
+    private final MethodHandle mainRule;
+    private final int argumentCount;
+
+    CompiledGrammar(final String hash, final Class<?> lexerClass, final Class<?> parserClass) throws Exception {
+        this.hash = hash;
+        this.lexerClass = lexerClass;
+        this.parserClass = parserClass;
+        final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        this.lexerConstructor = lookup.findConstructor(lexerClass, MethodType.methodType(void.class, CharSequence.class))
+                .asType(MethodType.methodType(TokenCursor.class, CharSequence.class));
+        this.parserConstructor = lookup.findConstructor(parserClass, MethodType.methodType(void.class, TokenCursor.class))
+                .asType(MethodType.methodType(Object.class, TokenCursor.class));
+        Method main = null;
+        for (final Method method : parserClass.getMethods()) {
+            if (method.getName().equals("mainRule")) {
+                main = method;
+            }
+        }
+        if (main == null) {
+            throw new Exception("No mainRule in " + parserClass.getName());
+        }
+        this.argumentCount = main.getParameterCount();
+        this.mainRule = lookup.unreflect(main).asType(MethodType.genericMethodType(argumentCount + 1));
+    }
+
+    private static RuntimeException rethrow(final Throwable e) throws ParsingException, LexingException {
+        if (e instanceof ParsingException) {
+            throw (ParsingException) e;
+        }
+        if (e instanceof LexingException) {
+            throw (LexingException) e;
+        }
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        return new IllegalStateException(e);
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public Class<?> getLexerClass() {
+        return lexerClass;
+    }
+
+    public Class<?> getParserClass() {
+        return parserClass;
+    }
+
+    public TokenCursor newLexer(final CharSequence input) {
+        try {
+            return (TokenCursor) lexerConstructor.invokeExact(input);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Object newParser(final TokenCursor lexer) {
+        try {
+            return (Object) parserConstructor.invokeExact(lexer);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Object parse(final CharSequence input, final Object... args) throws ParsingException, LexingException {
+        if (args.length != argumentCount) {
+            throw new IllegalArgumentException("Expected " + argumentCount + " arguments but got " + args.length);
+        }
+        final Object parser = newParser(newLexer(input));
+        try {
+            if (argumentCount == 0) {
+                return (Object) mainRule.invokeExact(parser);
+            }
+            final List<Object> arguments = new ArrayList<>();
+            arguments.add(parser);
+            arguments.addAll(Arrays.asList(args));
+            return mainRule.invokeWithArguments(arguments);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package generators;
+
+public class GeneratorOptions {
+    private boolean dfaLexer;
+    private boolean tableParser;
+    private boolean incremental;
+    private boolean backtracking;
+    private boolean force;
+    private boolean instrumented;
+    private String profilePath;
+    private Profile profile;
+
+    public GeneratorOptions() {
+        this.dfaLexer = false;
+        this.tableParser = false;
+        this.incremental = false;
+        this.backtracking = false;
+        this.force = false;
+        this.instrumented = false;
+        this.profilePath = null;
+        this.profile = null;
+    }
+
+    public boolean parse(final String option) {
+        if (option.startsWith("--profile=")) {
+            profilePath = option.substring("--profile=".length());
+            return !profilePath.isEmpty();
+        }
+        switch (option) {
+            case "--dfa":
+                dfaLexer = true;
+                return true;
+            case "--table":
+                tableParser = true;
+                return true;
+            case "--incremental":
+                incremental = true;
+                return true;
+            case "--backtrack":
+                backtracking = true;
+                return true;
+            case "--force":
+                force = true;
+                return true;
+            case "--instrument":
+                instrumented = true;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public boolean isDfaLexer() {
+        return dfaLexer;
+    }
+
+    public boolean isTableParser() {
+        return tableParser;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public boolean isBacktracking() {
+        return backtracking;
+    }
+
+    public boolean isForce() {
+        return force;
+    }
+
+    public boolean isInstrumented() {
+        return instrumented;
+    }
+
+    public String getProfilePath() {
+        return profilePath;
+    }
+
+    public Profile getProfile() {
+        return profile;
+    }
+
+    public void setProfile(final Profile profile) {
+        this.profile = profile;
+    }
+
+    public String getKey() {
+        return (dfaLexer ? "--dfa " : "") + (tableParser ? "--table " : "") + (incremental ? "--incremental " : "")
+                + (backtracking ? "--backtrack " : "") + (instrumented ? "--instrument " : "")
+                + (profile != null ? "--profile\n" + profile : "");
+    }
+}
@@ -0,0 +1,249 @@
+package generators;
+
+import input.GrammarDescription;
+import input.InputLexer;
+import input.InputParser;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.stream.Collectors;
+
+public class InMemoryCompiler {
+    private static class SourceFile extends SimpleJavaFileObject {
+        private final String content;
+
+        SourceFile(final String fileName, final String content) {
+            super(URI.create("string:///" + fileName), Kind.SOURCE);
+            this.content = content;
+        }
+
+        @Override
+        public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+            return content;
+        }
+    }
+
+    private static class ClassFile extends SimpleJavaFileObject {
+        private final String className;
+        private final Map<String, byte[]> classes;
+
+        ClassFile(final String className, final Map<String, byte[]> classes) {
+            super(URI.create("bytes:///" + className.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+            this.className = className;
+            this.classes = classes;
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            return new ByteArrayOutputStream() {
+                @Override
+                public void close() {
+                    classes.put(className, toByteArray());
+                }
+            };
+        }
+    }
+
+    private static class ClassFiles extends ForwardingJavaFileManager<StandardJavaFileManager> {
+        private final Map<String, byte[]> classes;
+
+        ClassFiles(final StandardJavaFileManager files, final Map<String, byte[]> classes) {
+            super(files);
+            this.classes = classes;
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(final Location location, final String className,
+                                                   final JavaFileObject.Kind kind, final FileObject sibling) {
+            return new ClassFile(className, classes);
+        }
+    }
+
+    private static class ClassFileLoader extends ClassLoader {
+        private final Map<String, byte[]> classes;
+
+        ClassFileLoader(final ClassLoader parent, final Map<String, byte[]> classes) {
+            super(parent);
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class<?> findClass(final String name) throws ClassNotFoundException {
+            final byte[] bytes = classes.get(name);
+            if (bytes == null) {
+                throw new ClassNotFoundException(name);
+            }
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    private static class SyntaxErrors extends BaseErrorListener {
+        private final List<String> messages = new ArrayList<>();
+
+        @Override
+        public synchronized void syntaxError(final Recognizer<?, ?> recognizer, final Object offendingSymbol,
+                                             final int line, final int position, final String message,
+                                             final RecognitionException e) {
+            messages.add("line " + line + ":" + position + " " + message);
+        }
+    }
+
+    private final static int DEFAULT_CAPACITY = 64;
+
+    private final ClassLoader parent;
+    private final String classPath;
+    private final Map<String, Future<CompiledGrammar>> cache;
+
+    public InMemoryCompiler() {
+        this(InMemoryCompiler.class.getClassLoader(), System.getProperty("java.class.path"), DEFAULT_CAPACITY);
+    }
+
+    public InMemoryCompiler(final ClassLoader parent, final String classPath, final int capacity) {
+        this.parent = parent;
+        this.classPath = classPath;
+        this.cache = new LinkedHashMap<String, Future<CompiledGrammar>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Future<CompiledGrammar>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public CompiledGrammar compile(final String name, final String grammar,
+                                   final GeneratorOptions options) throws Exception {
+        final String hash = Manifest.hash(name, grammar.getBytes(StandardCharsets.UTF_8), options);
+        final FutureTask<CompiledGrammar> task = new FutureTask<>(() -> build(hash, name, generate(name, grammar, options)));
+        Future<CompiledGrammar> compiled;
+        synchronized (cache) {
+            compiled = cache.get(hash);
+            if (compiled == null) {
+                cache.put(hash, task);
+            }
+        }
+        if (compiled == null) {
+            compiled = task;
+            task.run();
+        }
+        try {
+            return compiled.get();
+        } catch (ExecutionException e) {
+            synchronized (cache) {
+                cache.remove(hash, compiled);
+            }
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private static GrammarDescription parse(final String name, final String source) throws Exception {
+        final SyntaxErrors errors = new SyntaxErrors();
+        final InputLexer lexer = new InputLexer(CharStreams.fromString(source, name));
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(errors);
+        final InputParser parser = new InputParser(new CommonTokenStream(lexer));
+        parser.removeErrorListeners();
+        parser.addErrorListener(errors);
+        final GrammarDescription grammar = parser.grammarDescription().descr;
+        if (!errors.messages.isEmpty()) {
+            throw new Exception(String.join("\n", errors.messages));
+        }
+        return grammar;
+    }
+
+    private static Map<String, String> generate(final String name, final String source,
+                                                final GeneratorOptions options) throws Exception {
+        final GrammarDescription grammar = parse(name, source);
+        if (grammar.getError() != null) {
+            throw new Exception(grammar.getError().getMessage());
+        }
+        if (!grammar.isLL1() && !options.isBacktracking()) {
+            throw new Exception("Not LL1 grammar");
+        }
+        final Map<String, String> sources = new TreeMap<>();
+        final SourceSink sink = (path, content) -> sources.put(path.getFileName().toString(), content);
+        new LexerGenerator(Paths.get(name), name, grammar, options, sink).generate();
+        if (options.isTableParser()) {
+            new TableParserGenerator(Paths.get(name), name, grammar, sink).generate();
+        } else {
+            new ParserGenerator(Paths.get(name), name, grammar, options, sink).generate();
+        }
+        return sources;
+    }
+
+    private CompiledGrammar build(final String hash, final String name, final Map<String, String> sources) throws Exception {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new Exception("No system Java compiler available, a JDK is required");
+        }
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        final Map<String, byte[]> classes = new ConcurrentHashMap<>();
+        final List<JavaFileObject> units = new ArrayList<>();
+        for (final Map.Entry<String, String> source : sources.entrySet()) {
+            units.add(new SourceFile(source.getKey(), source.getValue()));
+        }
+        try (final JavaFileManager files = new ClassFiles(
+                compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8), classes)) {
+            final Boolean success = compiler.getTask(null, files, diagnostics,
+                    Arrays.asList("-classpath", classPath, "-nowarn"), null, units).call();
+            if (!success) {
+                throw new Exception(diagnostics.getDiagnostics().stream()
+                        .map(diagnostic -> (diagnostic.getSource() == null ? "" : diagnostic.getSource().getName()
+                                + ":" + diagnostic.getLineNumber() + ": ") + diagnostic.getMessage(null))
+                        .collect(Collectors.joining("\n")));
+            }
+        }
+        final ClassLoader loader = new ClassFileLoader(parent, classes);
+        return new CompiledGrammar(hash, loader.loadClass(find(classes, name + "Lexer")),
+                loader.loadClass(find(classes, name + "Parser")));
+    }
+
+    private static String find(final Map<String, byte[]> classes, final String simpleName) throws Exception {
+        for (final String className : classes.keySet()) {
+            if (className.equals(simpleName) || className.endsWith("." + simpleName)) {
+                return className;
+            }
+        }
+        throw new Exception("Class " + simpleName + " was not generated");
+    }
+}
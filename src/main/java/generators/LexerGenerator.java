@@ -1,34 +1,58 @@
 package generators;
 
+import generators.automata.Dfa;
+import generators.automata.Regex;
+import generators.automata.RegexAnalysis;
+import generators.automata.RegexParser;
+import generators.automata.UnsupportedRegexException;
 import input.GrammarDescription;
 import input.TokenRule;
 
-import java.io.Writer;
+import java.io.IOException;
 import java.nio.file.Path;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 
 public class LexerGenerator {
+    private final static int MAX_INLINE_RANGES = 8;
+
     private final Path output;
+    private final SourceSink sink;
     private final String name;
     private final GrammarDescription grammar;
+    private final GeneratorOptions options;
+
+    public LexerGenerator(final Path output, final String name, final GrammarDescription grammar,
+                          final GeneratorOptions options) {
+        this(output, name, grammar, options, SourceSink.FILES);
+    }
 
-    public LexerGenerator(final Path output, final String name, final GrammarDescription grammar) {
+    public LexerGenerator(final Path output, final String name, final GrammarDescription grammar,
+                          final GeneratorOptions options, final SourceSink sink) {
         this.output = output;
+        this.sink = sink;
         this.name = name;
         this.grammar = grammar;
+        this.options = options;
     }
 
     public void generate() throws Exception {
         generateTokens();
-        generateLexer();
+        if (options.isDfaLexer()) {
+            generateDfaLexer();
+        } else {
+            generateLexer();
+        }
     }
 
     private void generateTokens() throws Exception {
-        try (final TabbedWriter writer = new TabbedWriter(output.resolve(name + "Tokens.java"))) {
+        try (final TabbedWriter writer = new TabbedWriter(output.resolve(name + "Tokens.java"), sink)) {
             writer.writeHeader(grammar);
             writer.write(0, "public enum " + name + "Tokens {\n");
             final Set<String> skips = grammar.getSkips().stream()
@@ -40,7 +64,7 @@ public class LexerGenerator {
                     .collect(Collectors.joining(", "));
             writer.write(1, tokens + ", " + GrammarDescription.END + ";\n}\n");
         }
-        try (final TabbedWriter writer = new TabbedWriter(output.resolve("Token.java"))) {
+        try (final TabbedWriter writer = new TabbedWriter(output.resolve("Token.java"), sink)) {
             writer.writeHeader(grammar);
             writer.write(0, "import runtime.TokenData;\n\n");
             writer.write(0, "public class Token {\n");
@@ -53,86 +77,619 @@ public class LexerGenerator {
         }
     }
 
-    private void generateLexer() throws Exception {
+    private void writeImports(final TabbedWriter writer) throws IOException {
+        writer.write(0, "import java.io.Closeable;\n");
+        writer.write(0, "import java.io.IOException;\n");
+        writer.write(0, "import java.io.InputStream;\n");
+        writer.write(0, "import java.io.InputStreamReader;\n");
+        writer.write(0, "import java.io.Reader;\n");
+        writer.write(0, "import java.nio.channels.Channels;\n");
+        writer.write(0, "import java.nio.channels.ReadableByteChannel;\n");
+        writer.write(0, "import java.nio.charset.Charset;\n");
+        writer.write(0, "import java.nio.charset.StandardCharsets;\n");
+        writer.write(0, "import java.nio.file.Path;\n");
+        writer.write(0, "import java.util.concurrent.ForkJoinPool;\n");
+    }
+
+    private void writeConstructors(final TabbedWriter writer) throws IOException {
+        final String lexerName = name + "Lexer";
+        writer.write(1, "public " + lexerName + "(final Path input) throws IOException {\n");
+        writer.write(2, "this(input, StandardCharsets.UTF_8);\n");
+        writer.write(1, "}\n\n");
+        writer.write(1, "public " + lexerName + "(final Path input, final Charset charset) throws IOException {\n");
+        writer.write(2, "this(MappedInput.open(input, charset));\n");
+        writer.write(1, "}\n\n");
+        writer.write(1, "public " + lexerName + "(final InputStream input) {\n");
+        writer.write(2, "this(new InputStreamReader(input, StandardCharsets.UTF_8));\n");
+        writer.write(1, "}\n\n");
+        writer.write(1, "public " + lexerName + "(final ReadableByteChannel input) {\n");
+        writer.write(2, "this(Channels.newReader(input, StandardCharsets.UTF_8.newDecoder(), -1));\n");
+        writer.write(1, "}\n\n");
+        writer.write(1, "public " + lexerName + "(final Reader input) {\n");
+        writer.write(2, "this(new StreamInput(input));\n");
+        writer.write(1, "}\n\n");
+        writer.write(1, "public " + lexerName + "(final CharSequence input) {\n");
+        writer.write(2, "this(new TextInput(input));\n");
+        writer.write(1, "}\n\n");
+        writer.write(1, "public " + lexerName + "(final char[] input) {\n");
+        writer.write(2, "this(new ArrayInput(input));\n");
+        writer.write(1, "}\n\n");
+    }
+
+    private void writeCommonFields(final TabbedWriter writer) throws IOException {
         final String tokensName = name + "Tokens";
-        try (final TabbedWriter writer = new TabbedWriter(output.resolve(name + "Lexer.java"))) {
+        writer.write(1, "private final static Token _END_ = new Token(" + tokensName + "._END, new TokenData(\"_END\", \"\"));\n");
+        writer.write(1, "private final static " + tokensName + "[] TYPES = " + tokensName + ".values();\n");
+        writer.write(1, "private final static int END = " + tokensName + "._END.ordinal();\n");
+        if (options.isInstrumented()) {
+            writer.write(1, "public final static String[] RULE_NAMES = {" + grammar.getTokenRules().stream()
+                    .map(rule -> "\"" + rule.getName() + "\"")
+                    .collect(Collectors.joining(", ")) + "};\n");
+        }
+        writer.write(1, "private CharInput input;\n");
+        writer.write(1, "private int pos;\n");
+        writer.write(1, "private int type;\n");
+        writer.write(1, "private int start;\n");
+        writer.write(1, "private int end;\n");
+        if (options.isInstrumented()) {
+            writer.write(1, "private ParseMetrics metrics = ParseMetrics.NONE;\n");
+        }
+    }
+
+    private void writeReset(final TabbedWriter writer, final boolean usesPatterns) throws IOException {
+        writer.write(1, "public void reset(final CharSequence input) {\n");
+        writer.write(2, "reset(new TextInput(input));\n");
+        writer.write(1, "}\n\n");
+        writer.write(1, "public void reset(final char[] input) {\n");
+        writer.write(2, "reset(new ArrayInput(input));\n");
+        writer.write(1, "}\n\n");
+        writer.write(1, "public void reset(final char[] input, final int from, final int to) {\n");
+        writer.write(2, "reset(new ArrayInput(input, from, to));\n");
+        writer.write(1, "}\n\n");
+        writer.write(1, "public void reset(final CharInput input) {\n");
+        writer.write(2, "this.input = input;\n");
+        writer.write(2, "this.pos = 0;\n");
+        writer.write(2, "this.type = 0;\n");
+        writer.write(2, "this.start = 0;\n");
+        writer.write(2, "this.end = 0;\n");
+        if (usesPatterns) {
+            writer.write(2, "this.matcher.reset(input);\n");
+        }
+        writer.write(1, "}\n\n");
+    }
+
+    private static List<int[]> toPairs(final int[] ranges) {
+        final List<int[]> pairs = new ArrayList<>();
+        for (int i = 0; i < ranges.length; i += 2) {
+            pairs.add(new int[]{ranges[i], ranges[i + 1]});
+        }
+        return pairs;
+    }
+
+    private int[] boundaryChars() {
+        final Set<String> skipNames = grammar.getSkips().stream().map(TokenRule::getName).collect(Collectors.toSet());
+        final List<int[]> skipFirsts = new ArrayList<>();
+        final List<int[]> tokenFirsts = new ArrayList<>();
+        for (final TokenRule rule : grammar.getTokenRules()) {
+            Regex regex;
+            try {
+                regex = RegexParser.parse(StringLiterals.unquote(rule.getRegex()));
+            } catch (UnsupportedRegexException e) {
+                regex = null;
+            }
+            final boolean unknown = regex == null || RegexAnalysis.isNullable(regex);
+            if (skipNames.contains(rule.getName())) {
+                if (!unknown) {
+                    skipFirsts.addAll(toPairs(RegexAnalysis.firstChars(regex)));
+                }
+            } else {
+                tokenFirsts.addAll(toPairs(unknown ? new int[]{0, Regex.MAX_CHAR} : RegexAnalysis.firstChars(regex)));
+            }
+        }
+        tokenFirsts.addAll(toPairs(Regex.complement(Regex.normalize(skipFirsts))));
+        return Regex.complement(Regex.normalize(tokenFirsts));
+    }
+
+    private void writeParallel(final TabbedWriter writer) throws IOException {
+        final String lexerName = name + "Lexer";
+        writer.write(1, "private final static String BOUNDARIES = " + StringLiterals.quote(boundaryChars()) + ";\n\n");
+        writer.write(1, "private static String[] names() {\n");
+        writer.write(2, "final String[] names = new String[TYPES.length];\n");
+        writer.write(2, "for (int i = 0; i < names.length; ++i) {\n");
+        writer.write(3, "names[i] = TYPES[i].name();\n");
+        writer.write(2, "}\n");
+        writer.write(2, "return names;\n");
+        writer.write(1, "}\n\n");
+        writer.write(1, "public static ParallelLexer parallel(final CharSequence input, final ForkJoinPool pool) throws LexingException {\n");
+        writer.write(2, "return new ParallelLexer(" + lexerName + "::new, names(), END, BOUNDARIES, input, pool);\n");
+        writer.write(1, "}\n\n");
+        writer.write(1, "public static ParallelLexer parallel(final Path input, final Charset charset, final ForkJoinPool pool)"
+                + " throws IOException, LexingException {\n");
+        writer.write(2, "return new ParallelLexer(" + lexerName + "::new, names(), END, BOUNDARIES, input, charset, pool);\n");
+        writer.write(1, "}\n\n");
+    }
+
+    private void writeCommonMethods(final TabbedWriter writer) throws IOException {
+        if (options.isInstrumented()) {
+            writer.write(1, "public void setMetrics(final ParseMetrics metrics) {\n");
+            writer.write(2, "this.metrics = metrics;\n");
+            writer.write(1, "}\n\n");
+        }
+        writer.write(1, "@Override\n");
+        writer.write(1, "public int advance() throws LexingException {\n");
+        writer.write(2, "try {\n");
+        writer.write(3, "type = nextToken();\n");
+        writer.write(3, "return type;\n");
+        writer.write(2, "} catch (IOException e) {\n");
+        writer.write(3, "throw new LexingException(e);\n");
+        writer.write(2, "}\n");
+        writer.write(1, "}\n\n");
+        writer.write(1, "@Override\n");
+        writer.write(1, "public int getTypeId() {\n");
+        writer.write(2, "return type;\n");
+        writer.write(1, "}\n\n");
+        writer.write(1, "public " + name + "Tokens getType() {\n");
+        writer.write(2, "return TYPES[type];\n");
+        writer.write(1, "}\n\n");
+        writer.write(1, "@Override\n");
+        writer.write(1, "public long getStart() {\n");
+        writer.write(2, "return input.getOffset() + start;\n");
+        writer.write(1, "}\n\n");
+        writer.write(1, "@Override\n");
+        writer.write(1, "public long getEnd() {\n");
+        writer.write(2, "return input.getOffset() + end;\n");
+        writer.write(1, "}\n\n");
+        writer.write(1, "public CharSequence getText() {\n");
+        writer.write(2, "return input.subSequence(start, end);\n");
+        writer.write(1, "}\n\n");
+        writer.write(1, "@Override\n");
+        writer.write(1, "public LineIndex getLines() {\n");
+        writer.write(2, "return input.getLines();\n");
+        writer.write(1, "}\n\n");
+        writer.write(1, "@Override\n");
+        writer.write(1, "public TokenData getData() {\n");
+        writer.write(2, "if (input.isStable()) {\n");
+        writer.write(3, "return new TokenData(TYPES[type].name(), input, start, end);\n");
+        writer.write(2, "}\n");
+        writer.write(2, "return new TokenData(TYPES[type].name(), input.subSequence(start, end).toString(), getStart());\n");
+        writer.write(1, "}\n\n");
+        writer.write(1, "public boolean isStable() {\n");
+        writer.write(2, "return input.isStable();\n");
+        writer.write(1, "}\n\n");
+        writer.write(1, "public TokenData getData(final int type, final long start, final long end) {\n");
+        writer.write(2, "return new TokenData(TYPES[type].name(), input, (int) start, (int) end);\n");
+        writer.write(1, "}\n\n");
+        writer.write(1, "public Token getNext() throws LexingException {\n");
+        writer.write(2, "if (advance() == END) {\n");
+        writer.write(3, "return _END_;\n");
+        writer.write(2, "}\n");
+        writer.write(2, "return new Token(TYPES[type], getData());\n");
+        writer.write(1, "}\n\n");
+        writer.write(1, "@Override\n");
+        writer.write(1, "public void close() throws IOException {\n");
+        writer.write(2, "input.close();\n");
+        writer.write(1, "}\n");
+    }
+
+    private String ruleTypes() {
+        final Set<String> skipNames = grammar.getSkips().stream().map(TokenRule::getName).collect(Collectors.toSet());
+        final List<String> tokenNames = grammar.getTokenRules().stream()
+                .map(TokenRule::getName)
+                .filter(rule -> !skipNames.contains(rule))
+                .collect(Collectors.toList());
+        return grammar.getTokenRules().stream()
+                .map(rule -> String.valueOf(tokenNames.indexOf(rule.getName())))
+                .collect(Collectors.joining(", "));
+    }
+
+    private void writeDfaTable(final TabbedWriter writer, final String field, final Dfa dfa) throws IOException {
+        final int[] transitions = new int[dfa.getStateCount() * dfa.getClassCount()];
+        for (int s = 0; s < dfa.getStateCount(); ++s) {
+            for (int c = 0; c < dfa.getClassCount(); ++c) {
+                transitions[s * dfa.getClassCount() + c] = dfa.getTransitions()[s][c] + 1;
+            }
+        }
+        final int[] accepts = new int[dfa.getStateCount()];
+        for (int s = 0; s < dfa.getStateCount(); ++s) {
+            accepts[s] = dfa.getAccepts()[s] + 1;
+        }
+        writer.write(1, "private final static DfaTable " + field + " = new DfaTable(\n");
+        writer.write(3, "");
+        writer.writeString(4, dfa.getBounds());
+        writer.write(0, ",\n");
+        writer.write(3, "");
+        writer.writeString(4, dfa.getBoundClasses());
+        writer.write(0, ",\n");
+        writer.write(3, dfa.getClassCount() + ",\n");
+        writer.write(3, "");
+        writer.writeString(4, transitions);
+        writer.write(0, ",\n");
+        writer.write(3, "");
+        writer.writeString(4, accepts);
+        writer.write(0, ");\n");
+    }
+
+    private void writeDispatch(final TabbedWriter writer, final String field, final List<Integer> order,
+                               final int[][] firsts) throws IOException {
+        writer.write(1, "private final static CharDispatch " + field + " = new CharDispatch(\n");
+        writer.write(3, StringLiterals.quote(order.stream().mapToInt(Integer::intValue).toArray()) + ",\n");
+        writer.write(3, "new String[] {\n");
+        for (final int rule : order) {
+            writer.write(5, StringLiterals.quote(firsts[rule]) + ",\n");
+        }
+        writer.write(3, "});\n");
+    }
+
+    private static String rangeTest(final int[] ranges) {
+        final List<String> tests = new ArrayList<>();
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] == 0 && ranges[i + 1] == Regex.MAX_CHAR) {
+                return "true";
+            } else if (ranges[i] == ranges[i + 1]) {
+                tests.add("c == " + StringLiterals.quoteChar(ranges[i]));
+            } else {
+                final String test = "c >= " + StringLiterals.quoteChar(ranges[i]) + " && c <= " + StringLiterals.quoteChar(ranges[i + 1]);
+                tests.add(ranges.length > 2 ? "(" + test + ")" : test);
+            }
+        }
+        return String.join(" || ", tests);
+    }
+
+    private static boolean isInlinable(final List<RegexAnalysis.Item> items) {
+        if (items == null) {
+            return false;
+        }
+        for (final RegexAnalysis.Item item : items) {
+            if (item.getRanges().length / 2 > MAX_INLINE_RANGES) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeSequenceMatcher(final TabbedWriter writer, final String method,
+                                      final List<RegexAnalysis.Item> items) throws IOException {
+        writer.write(1, "private int " + method + "(int p) throws IOException {\n");
+        writer.write(2, "char c;\n");
+        for (final RegexAnalysis.Item item : items) {
+            final String test = rangeTest(item.getRanges());
+            if (!item.isOptional()) {
+                writer.write(2, "if (p == input.length() && !input.fill()) {\n");
+                writer.write(3, "return -1;\n");
+                writer.write(2, "}\n");
+                writer.write(2, "c = input.charAt(p);\n");
+                writer.write(2, "if (!(" + test + ")) {\n");
+                writer.write(3, "return -1;\n");
+                writer.write(2, "}\n");
+                writer.write(2, "++p;\n");
+            }
+            if (item.isRepeated()) {
+                writer.write(2, "while (p < input.length() || input.fill()) {\n");
+                writer.write(3, "c = input.charAt(p);\n");
+                writer.write(3, "if (!(" + test + ")) {\n");
+                writer.write(4, "break;\n");
+                writer.write(3, "}\n");
+                writer.write(3, "++p;\n");
+                writer.write(2, "}\n");
+            } else if (item.isOptional()) {
+                writer.write(2, "if (p < input.length() || input.fill()) {\n");
+                writer.write(3, "c = input.charAt(p);\n");
+                writer.write(3, "if (" + test + ") {\n");
+                writer.write(4, "++p;\n");
+                writer.write(3, "}\n");
+                writer.write(2, "}\n");
+            }
+        }
+        writer.write(2, "return p;\n");
+        writer.write(1, "}\n\n");
+    }
+
+    private List<Integer> profileOrder(final List<Integer> order, final Regex[] regexes, final int[][] firsts) {
+        final Profile profile = options.getProfile();
+        if (profile == null) {
+            return order;
+        }
+        final List<TokenRule> rules = grammar.getTokenRules();
+        final Dfa[] dfas = new Dfa[rules.size()];
+        for (final int rule : order) {
+            if (regexes[rule] != null && !RegexAnalysis.isNullable(regexes[rule])) {
+                dfas[rule] = Dfa.build(Collections.singletonList(regexes[rule]));
+            }
+        }
+        final int[] blockers = new int[order.size()];
+        final List<List<Integer>> blocked = new ArrayList<>();
+        for (int i = 0; i < order.size(); ++i) {
+            blocked.add(new ArrayList<>());
+            final int rule = order.get(i);
+            for (int j = 0; j < i; ++j) {
+                final int before = order.get(j);
+                if (RegexAnalysis.intersects(firsts[before], firsts[rule]) && (dfas[before] == null || dfas[rule] == null
+                        || RegexAnalysis.prefixConflict(dfas[before], dfas[rule]))) {
+                    blocked.get(j).add(i);
+                    ++blockers[i];
+                }
+            }
+        }
+        final PriorityQueue<Integer> ready = new PriorityQueue<>(Comparator
+                .comparingLong((Integer i) -> -profile.getTokenHits(rules.get(order.get(i)).getName()))
+                .thenComparingInt(i -> i));
+        for (int i = 0; i < order.size(); ++i) {
+            if (blockers[i] == 0) {
+                ready.add(i);
+            }
+        }
+        final List<Integer> res = new ArrayList<>();
+        while (!ready.isEmpty()) {
+            final int i = ready.poll();
+            res.add(order.get(i));
+            for (final int next : blocked.get(i)) {
+                if (--blockers[next] == 0) {
+                    ready.add(next);
+                }
+            }
+        }
+        return res;
+    }
+
+    private void generateLexer() throws Exception {
+        final List<TokenRule> rules = grammar.getTokenRules();
+        final List<String> ruleNames = rules.stream().map(TokenRule::getName).collect(Collectors.toList());
+        final Set<String> skipNames = grammar.getSkips().stream().map(TokenRule::getName).collect(Collectors.toSet());
+        final List<Integer> skipOrder = grammar.getSkips().stream()
+                .map(rule -> ruleNames.indexOf(rule.getName()))
+                .collect(Collectors.toList());
+        final List<Integer> tokenOrder = new ArrayList<>();
+        final List<List<RegexAnalysis.Item>> sequences = new ArrayList<>();
+        final Dfa[] dfas = new Dfa[rules.size()];
+        final Regex[] regexes = new Regex[rules.size()];
+        final int[][] firsts = new int[rules.size()][];
+        boolean usesPatterns = false;
+        boolean usesDfas = false;
+        for (int i = 0; i < rules.size(); ++i) {
+            if (!skipNames.contains(ruleNames.get(i))) {
+                tokenOrder.add(i);
+            }
+            Regex regex;
+            try {
+                regex = RegexParser.parse(StringLiterals.unquote(rules.get(i).getRegex()));
+            } catch (UnsupportedRegexException e) {
+                regex = null;
+            }
+            final List<RegexAnalysis.Item> sequence = regex == null ? null : RegexAnalysis.simpleSequence(regex);
+            sequences.add(isInlinable(sequence) ? sequence : null);
+            if (sequences.get(i) == null && regex != null) {
+                final Dfa dfa = Dfa.build(Collections.singletonList(regex));
+                if (dfa.isPrefixFree() && dfa.getStateCount() < Character.MAX_VALUE) {
+                    dfas[i] = dfa;
+                }
+            }
+            regexes[i] = regex;
+            usesDfas |= dfas[i] != null;
+            usesPatterns |= sequences.get(i) == null && dfas[i] == null;
+            firsts[i] = regex == null || RegexAnalysis.isNullable(regex)
+                    ? new int[]{0, Regex.MAX_CHAR}
+                    : RegexAnalysis.firstChars(regex);
+        }
+
+        try (final TabbedWriter writer = new TabbedWriter(output.resolve(name + "Lexer.java"), sink)) {
             writer.writeHeader(grammar);
-            writer.write(0, "import java.nio.file.Files;\n");
-            writer.write(0, "import java.util.Map;\n");
-            writer.write(0, "import java.util.HashMap;\n");
-            writer.write(0, "import java.util.stream.Collectors;\n");
-            writer.write(0, "import java.util.regex.Pattern;\n");
-            writer.write(0, "import java.util.regex.Matcher;\n");
-            writer.write(0, "import java.util.Arrays;\n");
-            writer.write(0, "import java.io.IOException;\n");
+            writeImports(writer);
+            if (usesPatterns) {
+                writer.write(0, "import java.util.regex.Pattern;\n");
+                writer.write(0, "import java.util.regex.Matcher;\n");
+            }
+            writer.write(0, "import runtime.ArrayInput;\n");
+            writer.write(0, "import runtime.CharDispatch;\n");
+            writer.write(0, "import runtime.CharInput;\n");
+            if (usesDfas) {
+                writer.write(0, "import runtime.DfaTable;\n");
+            }
+            writer.write(0, "import runtime.LineIndex;\n");
+            writer.write(0, "import runtime.MappedInput;\n");
+            writer.write(0, "import runtime.ParallelLexer;\n");
+            if (options.isInstrumented()) {
+                writer.write(0, "import runtime.ParseMetrics;\n");
+            }
+            writer.write(0, "import runtime.StreamInput;\n");
+            writer.write(0, "import runtime.TextInput;\n");
+            writer.write(0, "import runtime.TokenCursor;\n");
             writer.write(0, "import runtime.TokenData;\n");
-            writer.write(0, "import runtime.LexingException;\n");
-            writer.write(0, "import java.nio.file.Path;\n\n");
-            writer.write(0, "public class " + name + "Lexer {\n");
-            writer.write(1, "private final static Token _END_ = new Token(" + tokensName + "._END, new TokenData(\"_END\", \"\"));\n");
-            writer.write(1, "private final Pattern ignore;\n");
-            writer.write(1, "private final Matcher matcher;\n");
-            writer.write(1, "private String text;\n");
-            writer.write(1, "private final Map<" + tokensName + ", Pattern> tokens;\n\n");
-            writer.write(1, "public " + name + "Lexer(final Path input) throws IOException {\n");
-
-            final List<TokenRule> skips = grammar.getSkips();
-            final Set<String> skipNames = skips.stream().map(TokenRule::getName).collect(Collectors.toSet());
-            final List<TokenRule> tokens = grammar.getTokenRules().stream()
-                    .filter(rule -> !skipNames.contains(rule.getName()))
-                    .collect(Collectors.toList());
-            final String delimiter = skips.stream()
-                    .map(TokenRule::getRegex)
-                    .map(regex -> {
-                        int len = regex.length();
-                        return regex.substring(1, len).substring(0, len - 2);
-                    })
-                    .map(regex -> "(" + regex + ")")
-                    .collect(Collectors.joining("|"));
-
-            writer.write(2, "this.ignore = Pattern.compile(\"" + delimiter + "\");\n");
-            writer.write(2, "this.matcher = Pattern.compile(\"\").matcher(\"\");\n");
-            writer.write(2, "this.text = Files.newBufferedReader(input).lines().collect(Collectors.joining());\n");
-            writer.write(2, "this.tokens = new HashMap<>();\n");
-            for (final TokenRule rule : tokens) {
-                writer.write(2, "this.tokens.put(" + tokensName + "." + rule.getName() + ", ");
-                writer.write(0, "Pattern.compile(" + rule.getRegex() + "));\n");
+            writer.write(0, "import runtime.LexingException;\n\n");
+            writer.write(0, "public class " + name + "Lexer implements TokenCursor, Closeable {\n");
+            writeCommonFields(writer);
+            writer.write(1, "private final static int[] RULE_TYPES = {" + ruleTypes() + "};\n");
+            writeDispatch(writer, "SKIPS", profileOrder(skipOrder, regexes, firsts), firsts);
+            writeDispatch(writer, "TOKENS", profileOrder(tokenOrder, regexes, firsts), firsts);
+            for (int i = 0; i < rules.size(); ++i) {
+                if (dfas[i] != null) {
+                    writeDfaTable(writer, "DFA_" + ruleNames.get(i), dfas[i]);
+                } else if (sequences.get(i) == null) {
+                    writer.write(1, "private final static Pattern PATTERN_" + ruleNames.get(i)
+                            + " = Pattern.compile(" + rules.get(i).getRegex() + ");\n");
+                }
+            }
+            if (usesPatterns) {
+                writer.write(1, "private final static Pattern EMPTY = Pattern.compile(\"\");\n");
+                writer.write(1, "private final Matcher matcher;\n");
+            }
+            writer.write(0, "\n");
+            writeConstructors(writer);
+            writer.write(1, "public " + name + "Lexer(final CharInput input) {\n");
+            writer.write(2, "this.input = input;\n");
+            writer.write(2, "this.pos = 0;\n");
+            if (usesPatterns) {
+                writer.write(2, "this.matcher = EMPTY.matcher(input);\n");
             }
             writer.write(1, "}\n\n");
+            writeReset(writer, usesPatterns);
+            writeParallel(writer);
+
+            if (usesPatterns) {
+                writer.write(1, "private int lookingAt(final Pattern pattern, final int from) throws IOException {\n");
+                writer.write(2, "matcher.usePattern(pattern);\n");
+                writer.write(2, "matcher.region(from, input.length());\n");
+                writer.write(2, "boolean found = matcher.lookingAt();\n");
+                writer.write(2, "while (matcher.hitEnd() && input.fill()) {\n");
+                writer.write(3, "matcher.region(from, input.length());\n");
+                writer.write(3, "found = matcher.lookingAt();\n");
+                writer.write(2, "}\n");
+                writer.write(2, "return found ? matcher.end() : -1;\n");
+                writer.write(1, "}\n\n");
+            }
+            for (int i = 0; i < rules.size(); ++i) {
+                if (sequences.get(i) != null) {
+                    writeSequenceMatcher(writer, "match" + ruleNames.get(i), sequences.get(i));
+                }
+            }
 
-            writer.write(1, "public Token getNext() throws LexingException {\n");
-            writer.write(2, "matcher.usePattern(ignore);\n");
-            writer.write(2, "matcher.reset(text);\n");
-            writer.write(2, "while (matcher.lookingAt()) {\n");
-            writer.write(3, "text = text.substring(matcher.end());\n");
-            writer.write(3, "matcher.reset(text);\n");
+            writer.write(1, "private int match(final int rule, final int from) throws IOException {\n");
+            writer.write(2, "switch (rule) {\n");
+            for (int i = 0; i < rules.size(); ++i) {
+                writer.write(3, "case " + i + ":\n");
+                if (sequences.get(i) != null) {
+                    writer.write(4, "return match" + ruleNames.get(i) + "(from);\n");
+                } else if (dfas[i] != null) {
+                    writer.write(4, "return DFA_" + ruleNames.get(i) + ".match(input, from);\n");
+                } else {
+                    writer.write(4, "return lookingAt(PATTERN_" + ruleNames.get(i) + ", from);\n");
+                }
+            }
+            writer.write(3, "default:\n");
+            writer.write(4, "return -1;\n");
             writer.write(2, "}\n");
-            writer.write(2, "final String curText = text;\n");
-            writer.write(2, "boolean matched = Arrays.stream(" + tokensName + ".values()).filter(type -> (type != " + tokensName + "._END)).map(tokens::get).anyMatch(regex -> {\n");
-            writer.write(3, "matcher.usePattern(regex);\n");
-            writer.write(3, "matcher.reset(curText);\n");
-            writer.write(3, "return matcher.lookingAt();\n");
-            writer.write(2, "});\n");
-            writer.write(2, "if (!matched) {\n");
-            writer.write(3, "if (text.isEmpty()) {\n");
-            writer.write(4, "return _END_;\n");
-            writer.write(3, "} else {\n");
-            writer.write(4, "throw new LexingException(\"Unmatched data in input: \\\"\" + text + \"\\\"\");\n");
+            writer.write(1, "}\n\n");
+
+            writer.write(1, "private int nextToken() throws IOException, LexingException {\n");
+            writer.write(2, "pos = input.release(pos);\n");
+            writer.write(2, "skip:\n");
+            writer.write(2, "while (pos < input.length() || input.fill()) {\n");
+            writer.write(3, "for (final char rule : SKIPS.candidates(input.charAt(pos))) {\n");
+            writer.write(4, "final int matched = match(rule, pos);\n");
+            if (options.isInstrumented()) {
+                writer.write(4, "metrics.match(rule, matched > pos);\n");
+            }
+            writer.write(4, "if (matched > pos) {\n");
+            writer.write(5, "pos = matched;\n");
+            writer.write(5, "continue skip;\n");
+            writer.write(4, "}\n");
             writer.write(3, "}\n");
-            writer.write(2, "} else {\n");
-            writer.write(3, "for (final " + tokensName + " type : " + tokensName + ".values()) {\n");
-            writer.write(4, "final Pattern regex = tokens.get(type);\n");
-            writer.write(4, "matcher.usePattern(regex);\n");
-            writer.write(4, "matcher.reset(text);\n");
-            writer.write(4, "if (matcher.lookingAt()) {\n");
-            writer.write(5, "final String curMatch = text.substring(0, matcher.end());\n");
-            writer.write(5, "text = text.substring(curMatch.length());\n");
-            writer.write(5, "return new Token(type, new TokenData(type.name(), curMatch));\n");
+            writer.write(3, "break;\n");
+            writer.write(2, "}\n");
+            writer.write(2, "start = pos;\n");
+            writer.write(2, "end = pos;\n");
+            writer.write(2, "if (pos == input.length() && !input.fill()) {\n");
+            writer.write(3, "return END;\n");
+            writer.write(2, "}\n");
+            writer.write(2, "for (final char rule : TOKENS.candidates(input.charAt(pos))) {\n");
+            writer.write(3, "final int matched = match(rule, pos);\n");
+            if (options.isInstrumented()) {
+                writer.write(3, "metrics.match(rule, matched >= 0);\n");
+            }
+            writer.write(3, "if (matched >= 0) {\n");
+            writer.write(4, "pos = matched;\n");
+            writer.write(4, "end = pos;\n");
+            writer.write(4, "return RULE_TYPES[rule];\n");
+            writer.write(3, "}\n");
+            writer.write(2, "}\n");
+            writer.write(2, "throw LexingException.unmatched(input, pos);\n");
+            writer.write(1, "}\n\n");
+            writeCommonMethods(writer);
+            writer.write(0, "}\n");
+        }
+    }
+
+    private Dfa buildDfa() throws Exception {
+        final List<String> skipNames = grammar.getSkips().stream().map(TokenRule::getName).collect(Collectors.toList());
+        final List<Regex> rules = new ArrayList<>();
+        final int[] priorities = new int[grammar.getTokenRules().size()];
+        int tokens = skipNames.size();
+        for (final TokenRule rule : grammar.getTokenRules()) {
+            try {
+                rules.add(RegexParser.parse(StringLiterals.unquote(rule.getRegex())));
+            } catch (UnsupportedRegexException e) {
+                throw new Exception("Token rule " + rule.getName() + " cannot be compiled to DFA: " + e.getMessage(), e);
+            }
+            final int skip = skipNames.indexOf(rule.getName());
+            priorities[rules.size() - 1] = skip >= 0 ? skip : tokens++;
+        }
+        final Dfa dfa = Dfa.build(rules, priorities);
+        if (dfa.getStateCount() >= Character.MAX_VALUE) {
+            throw new Exception("Lexer DFA has too many states: " + dfa.getStateCount());
+        }
+        return dfa;
+    }
+
+    private void generateDfaLexer() throws Exception {
+        final Dfa dfa = buildDfa();
+
+        try (final TabbedWriter writer = new TabbedWriter(output.resolve(name + "Lexer.java"), sink)) {
+            writer.writeHeader(grammar);
+            writeImports(writer);
+            writer.write(0, "import runtime.ArrayInput;\n");
+            writer.write(0, "import runtime.CharInput;\n");
+            writer.write(0, "import runtime.DfaTable;\n");
+            writer.write(0, "import runtime.LineIndex;\n");
+            writer.write(0, "import runtime.MappedInput;\n");
+            writer.write(0, "import runtime.ParallelLexer;\n");
+            if (options.isInstrumented()) {
+                writer.write(0, "import runtime.ParseMetrics;\n");
+            }
+            writer.write(0, "import runtime.StreamInput;\n");
+            writer.write(0, "import runtime.TextInput;\n");
+            writer.write(0, "import runtime.TokenCursor;\n");
+            writer.write(0, "import runtime.TokenData;\n");
+            writer.write(0, "import runtime.LexingException;\n\n");
+            writer.write(0, "public class " + name + "Lexer implements TokenCursor, Closeable {\n");
+            writeCommonFields(writer);
+            writer.write(1, "private final static int[] RULE_TYPES = {" + ruleTypes() + "};\n");
+            writeDfaTable(writer, "DFA", dfa);
+            writer.write(0, "\n");
+            writeConstructors(writer);
+            writer.write(1, "public " + name + "Lexer(final CharInput input) {\n");
+            writer.write(2, "this.input = input;\n");
+            writer.write(2, "this.pos = 0;\n");
+            writer.write(1, "}\n\n");
+            writeReset(writer, false);
+            writeParallel(writer);
+
+            writer.write(1, "private int nextToken() throws IOException, LexingException {\n");
+            writer.write(2, "while (true) {\n");
+            writer.write(3, "pos = input.release(pos);\n");
+            writer.write(3, "start = pos;\n");
+            writer.write(3, "end = pos;\n");
+            writer.write(3, "if (pos == input.length() && !input.fill()) {\n");
+            writer.write(4, "return END;\n");
+            writer.write(3, "}\n");
+            writer.write(3, "int state = 0;\n");
+            writer.write(3, "int cur = pos;\n");
+            writer.write(3, "int matchEnd = -1;\n");
+            writer.write(3, "int matchRule = -1;\n");
+            writer.write(3, "while (cur < input.length() || input.fill()) {\n");
+            writer.write(4, "state = DFA.next(state, input.charAt(cur));\n");
+            writer.write(4, "if (state < 0) {\n");
+            writer.write(5, "break;\n");
+            writer.write(4, "}\n");
+            writer.write(4, "++cur;\n");
+            writer.write(4, "final int rule = DFA.accept(state);\n");
+            writer.write(4, "if (rule >= 0) {\n");
+            writer.write(5, "matchEnd = cur;\n");
+            writer.write(5, "matchRule = rule;\n");
             writer.write(4, "}\n");
             writer.write(3, "}\n");
+            writer.write(3, "if (matchRule < 0) {\n");
+            writer.write(4, "throw LexingException.unmatched(input, pos);\n");
+            writer.write(3, "}\n");
+            if (options.isInstrumented()) {
+                writer.write(3, "metrics.match(matchRule, true);\n");
+            }
+            writer.write(3, "pos = matchEnd;\n");
+            writer.write(3, "end = pos;\n");
+            writer.write(3, "if (RULE_TYPES[matchRule] >= 0) {\n");
+            writer.write(4, "return RULE_TYPES[matchRule];\n");
+            writer.write(3, "}\n");
             writer.write(2, "}\n");
-            writer.write(2, "return null;\n");
-            writer.write(1, "}\n");
+            writer.write(1, "}\n\n");
+            writeCommonMethods(writer);
             writer.write(0, "}\n");
         }
     }
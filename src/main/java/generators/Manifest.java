@@ -0,0 +1,142 @@
+package generators;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class Manifest {
+    public final static String FILE_NAME = ".generator-manifest";
+    private final static String ALGORITHM = "SHA-256";
+
+    private static String generatorVersion;
+
+    private final Path output;
+    private final String hash;
+
+    public Manifest(final Path output, final String name, final byte[] grammar,
+                    final GeneratorOptions options) throws IOException {
+        this.output = output;
+        this.hash = hash(name, grammar, options);
+    }
+
+    static String hash(final String name, final byte[] grammar, final GeneratorOptions options) throws IOException {
+        final MessageDigest digest = newDigest();
+        digest.update(getGeneratorVersion().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(name.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(options.getKey().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(grammar);
+        return toHex(digest.digest());
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(final byte[] bytes) {
+        final StringBuilder res = new StringBuilder(bytes.length * 2);
+        for (final byte b : bytes) {
+            res.append(Character.forDigit((b >> 4) & 0xF, 16));
+            res.append(Character.forDigit(b & 0xF, 16));
+        }
+        return res.toString();
+    }
+
+    private static String hashFile(final Path path) throws IOException {
+        final MessageDigest digest = newDigest();
+        try (final InputStream input = Files.newInputStream(path)) {
+            final byte[] buffer = new byte[1 << 16];
+            int read;
+            while ((read = input.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    private static synchronized String getGeneratorVersion() throws IOException {
+        if (generatorVersion != null) {
+            return generatorVersion;
+        }
+        final CodeSource source = Manifest.class.getProtectionDomain().getCodeSource();
+        if (source == null) {
+            generatorVersion = "";
+            return generatorVersion;
+        }
+        final Path location;
+        try {
+            location = Paths.get(source.getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+        if (Files.isDirectory(location)) {
+            final MessageDigest digest = newDigest();
+            final List<Path> classes;
+            try (final Stream<Path> files = Files.walk(location)) {
+                classes = files.filter(file -> file.toString().endsWith(".class"))
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+            for (final Path file : classes) {
+                digest.update(location.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+                digest.update(hashFile(file).getBytes(StandardCharsets.UTF_8));
+            }
+            generatorVersion = toHex(digest.digest());
+        } else {
+            generatorVersion = hashFile(location);
+        }
+        return generatorVersion;
+    }
+
+    public boolean isUpToDate() throws IOException {
+        final Path path = output.resolve(FILE_NAME);
+        if (!Files.isRegularFile(path)) {
+            return false;
+        }
+        final List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        final Iterator<String> iterator = lines.iterator();
+        if (!iterator.hasNext() || !iterator.next().equals(hash)) {
+            return false;
+        }
+        while (iterator.hasNext()) {
+            final String line = iterator.next();
+            final int space = line.indexOf(' ');
+            if (space < 0) {
+                return false;
+            }
+            final Path file = output.resolve(line.substring(space + 1));
+            if (!Files.isRegularFile(file) || !hashFile(file).equals(line.substring(0, space))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void write(final List<String> files) throws IOException {
+        final List<String> lines = new ArrayList<>();
+        lines.add(hash);
+        for (final String file : files) {
+            lines.add(hashFile(output.resolve(file)) + " " + file);
+        }
+        final String content = String.join("\n", lines) + "\n";
+        TabbedWriter.writeIfChanged(output.resolve(FILE_NAME), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -5,21 +5,34 @@ import input.*;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 public class ParserGenerator {
     private final static String THROWS = "ParsingException, LexingException";
 
     private final Path output;
+    private final SourceSink sink;
     private final String name;
     private final GrammarDescription grammar;
     private final String tokensName;
     private final Map<String, String> nonTermToType;
+    private final GeneratorOptions options;
+    private final boolean packrat;
 
-    public ParserGenerator(final Path output, final String name, final GrammarDescription grammar) {
+    public ParserGenerator(final Path output, final String name, final GrammarDescription grammar,
+                           final GeneratorOptions options) {
+        this(output, name, grammar, options, SourceSink.FILES);
+    }
+
+    public ParserGenerator(final Path output, final String name, final GrammarDescription grammar,
+                           final GeneratorOptions options, final SourceSink sink) {
         this.output = output;
+        this.sink = sink;
         this.name = name;
         this.grammar = grammar;
+        this.options = options;
+        this.packrat = options.isBacktracking() && !grammar.isLL1();
         this.tokensName = name + "Tokens";
         this.nonTermToType = new HashMap<>();
         for (final ParserRule rule : grammar.getParserRules()) {
@@ -29,110 +42,580 @@ public class ParserGenerator {
 
     public void generate() throws Exception {
 
-        try (final TabbedWriter writer = new TabbedWriter(output.resolve(name + "Parser.java"))) {
+        try (final TabbedWriter writer = new TabbedWriter(output.resolve(name + "Parser.java"), sink)) {
             writer.writeHeader(grammar);
             writer.write(0, "\n");
+            writer.write(0, "import java.io.Closeable;\n");
+            writeBatchImports(writer, grammar);
+            if (options.isIncremental()) {
+                writer.write(0, "import runtime.MemoTable;\n");
+            }
+            if (packrat) {
+                writer.write(0, "import runtime.PackratTable;\n");
+            }
+            if (options.isInstrumented()) {
+                writer.write(0, "import runtime.ParseMetrics;\n");
+            }
+            writer.write(0, "import runtime.PipelinedCursor;\n");
+            if (packrat) {
+                writer.write(0, "import runtime.TokenBuffer;\n");
+            }
+            writer.write(0, "import runtime.TokenCursor;\n");
             writer.write(0, "import runtime.TokenData;\n");
+            if (options.isIncremental()) {
+                writer.write(0, "import runtime.TokenList;\n");
+            }
             writer.write(0, "import runtime.LexingException;\n");
             writer.write(0, "import runtime.ParsingException;\n\n");
-            writer.write(0, "public class " + name + "Parser {\n");
-            writer.write(1, "private final " + name + "Lexer lexer;\n");
-            writer.write(1, "private Token curToken;\n\n");
-            writer.write(1, "public " + name + "Parser(final " + name + "Lexer lexer) {\n");
-            writer.write(2, "this.lexer = lexer;\n");
-            writer.write(2, "this.curToken = null;\n");
+            writer.write(0, "public class " + name + "Parser implements Closeable {\n");
+            writer.write(1, "private final static " + tokensName + "[] TYPES = " + tokensName + ".values();\n");
+            if (options.isInstrumented()) {
+                writer.write(1, "public final static String[] RULE_NAMES = {" + grammar.getParserRules().stream()
+                        .map(rule -> "\"" + rule.getName() + "\"")
+                        .collect(Collectors.joining(", ")) + "};\n");
+            }
+            writer.write(1, "private final TokenCursor lexer;\n");
+            writer.write(1, "private final PipelinedCursor pipeline;\n");
+            if (options.isIncremental()) {
+                writer.write(1, "private final TokenList tokens;\n");
+                writer.write(1, "private final MemoTable memo;\n");
+            }
+            if (packrat) {
+                writer.write(1, "private final TokenBuffer tokens;\n");
+                writer.write(1, "private final PackratTable memo;\n");
+            }
+            if (options.isInstrumented()) {
+                writer.write(1, "private ParseMetrics metrics;\n");
+                writer.write(1, "private long consumed;\n");
+            }
+            writer.write(1, "private " + tokensName + " curType;\n\n");
+            writer.write(1, "public " + name + "Parser(final TokenCursor lexer) {\n");
+            writer.write(2, "this(lexer, null);\n");
+            writer.write(1, "}\n\n");
+            writer.write(1, "private " + name + "Parser(final TokenCursor lexer, final PipelinedCursor pipeline) {\n");
+            if (packrat) {
+                final String lexerName = name + "Lexer";
+                writer.write(2, "this.tokens = new TokenBuffer(lexer, lexer instanceof " + lexerName + " && (("
+                        + lexerName + ") lexer).isStable() ? ((" + lexerName + ") lexer)::getData : null);\n");
+                writer.write(2, "this.lexer = tokens;\n");
+                writer.write(2, "this.memo = new PackratTable();\n");
+            } else {
+                writer.write(2, "this.lexer = lexer;\n");
+            }
+            writer.write(2, "this.pipeline = pipeline;\n");
+            if (options.isIncremental()) {
+                writer.write(2, "this.tokens = lexer instanceof TokenList ? (TokenList) lexer : null;\n");
+                writer.write(2, "this.memo = tokens == null ? null : new MemoTable(tokens.size());\n");
+            }
+            if (options.isInstrumented()) {
+                writer.write(2, "this.metrics = ParseMetrics.NONE;\n");
+                writer.write(2, "this.consumed = 0;\n");
+            }
+            writer.write(2, "this.curType = null;\n");
             writer.write(1, "}\n\n");
+            if (options.isInstrumented()) {
+                writeMetricsSetter(writer);
+            }
+            writePipelinedMethods(writer, name, tokensName);
+            writeBatchMethod(writer, name, grammar);
+            if (options.isIncremental()) {
+                writeIncrementalMethods(writer);
+            }
             writer.write(1, "public ");
             final ParserRule mainRule = grammar.getStart();
             final String mainRuleArgs = getArgs(mainRule);
             writer.writeFunctionHead(mainRule.getReturnValue().getType(), "mainRule", mainRuleArgs, THROWS);
-            writer.write(2, "curToken = lexer.getNext();\n");
-            writer.write(2, "final " + grammar.getStart().getReturnValue().getType() + " ");
+            writer.write(2, "try {\n");
+            if (options.isIncremental()) {
+                writer.write(3, "curType = TYPES[tokens == null ? lexer.advance() : tokens.seek(0)];\n");
+                writer.write(3, "if (memo != null) {\n");
+                writer.write(4, "memo.begin();\n");
+                writer.write(3, "}\n");
+            } else if (packrat) {
+                writer.write(3, "tokens.reset();\n");
+                writer.write(3, "memo.clear();\n");
+                writer.write(3, "curType = TYPES[lexer.advance()];\n");
+            } else {
+                writer.write(3, "curType = TYPES[lexer.advance()];\n");
+            }
+            writer.write(3, "final " + grammar.getStart().getReturnValue().getType() + " ");
             writer.write(0, grammar.getStart().getReturnValue().getName() + " = parse");
             writer.write(0, grammar.getStart().getName() + "(");
             final String mainRuleParams = grammar.getStart().getArguments().stream()
                     .map(ParserRule.RuleArgument::getName)
                     .collect(Collectors.joining(", "));
             writer.write(0, mainRuleParams + ");\n");
-            writer.write(2, "if (curToken.type != " + tokensName + "._END) {\n");
-            writer.write(3, "throw new ParsingException(\"Expected end of input but found \" + curToken.data.getName());\n");
-            writer.write(2, "}\n");
-            writer.write(2, "return res;\n");
+            writer.write(3, "if (curType != " + tokensName + "._END) {\n");
+            writer.write(4, "throw ParsingException.trailing(lexer, curType.name());\n");
+            writer.write(3, "}\n");
+            writer.write(3, "return " + grammar.getStart().getReturnValue().getName() + ";\n");
+            writeCloseOnFailure(writer);
             writer.write(1, "}\n\n");
 
-            for (final ParserRule rule : grammar.getParserRules()) {
-                generateRule(rule, writer);
+            final List<ParserRule> rules = grammar.getParserRules();
+            for (int i = 0; i < rules.size(); ++i) {
+                if (options.isInstrumented()) {
+                    generateMeasuredRule(rules.get(i), i, writer);
+                }
+                if (options.isIncremental()) {
+                    generateMemoizedRule(rules.get(i), i, writer);
+                } else if (packrat) {
+                    generatePackratRule(rules.get(i), i, writer);
+                }
+                if (packrat && !grammar.isLL1(rules.get(i))) {
+                    generateBacktrackingRule(rules.get(i), writer);
+                } else {
+                    generateRule(rules.get(i), writer);
+                }
             }
 
             writer.write(0, "}\n");
         }
     }
 
+    static void writePipelinedMethods(final TabbedWriter writer, final String name,
+                                      final String tokensName) throws IOException {
+        writer.write(1, "public static " + name + "Parser pipelined(final " + name + "Lexer lexer) {\n");
+        writer.write(2, "final int end = " + tokensName + "._END.ordinal();\n");
+        writer.write(2, "final PipelinedCursor pipeline = new PipelinedCursor(lexer, end, lexer.isStable() ? lexer::getData : null);\n");
+        writer.write(2, "return new " + name + "Parser(pipeline, pipeline);\n");
+        writer.write(1, "}\n\n");
+        writer.write(1, "@Override\n");
+        writer.write(1, "public void close() {\n");
+        writer.write(2, "if (pipeline != null) {\n");
+        writer.write(3, "pipeline.close();\n");
+        writer.write(2, "}\n");
+        writer.write(1, "}\n\n");
+    }
+
+    static void writeCloseOnFailure(final TabbedWriter writer) throws IOException {
+        writer.write(2, "} catch (final Throwable e) {\n");
+        writer.write(3, "close();\n");
+        writer.write(3, "throw e;\n");
+        writer.write(2, "}\n");
+    }
+
+    static void writeBatchImports(final TabbedWriter writer, final GrammarDescription grammar) throws IOException {
+        if (!grammar.getStart().getArguments().isEmpty()) {
+            return;
+        }
+        writer.write(0, "import java.nio.charset.StandardCharsets;\n");
+        writer.write(0, "import java.nio.file.Path;\n");
+        writer.write(0, "import java.util.concurrent.ForkJoinPool;\n");
+        writer.write(0, "import runtime.BatchParser;\n");
+        writer.write(0, "import runtime.CharInput;\n");
+        writer.write(0, "import runtime.MappedInput;\n");
+    }
+
+    static void writeBatchMethod(final TabbedWriter writer, final String name,
+                                 final GrammarDescription grammar) throws IOException {
+        if (!grammar.getStart().getArguments().isEmpty()) {
+            return;
+        }
+        final String result = boxedType(grammar.getStart().getReturnValue().getType());
+        writer.write(1, "public static BatchParser<Path, " + result + "> batch(final ForkJoinPool pool) {\n");
+        writer.write(2, "return new BatchParser<>(() -> {\n");
+        writer.write(3, "final " + name + "Lexer lexer = new " + name + "Lexer(\"\");\n");
+        writer.write(3, "final " + name + "Parser parser = new " + name + "Parser(lexer);\n");
+        writer.write(3, "return path -> {\n");
+        writer.write(4, "try (final CharInput input = MappedInput.open(path, StandardCharsets.UTF_8)) {\n");
+        writer.write(5, "lexer.reset(input);\n");
+        writer.write(5, "return parser.mainRule();\n");
+        writer.write(4, "}\n");
+        writer.write(3, "};\n");
+        writer.write(2, "}, pool);\n");
+        writer.write(1, "}\n\n");
+    }
+
     private String getArgs(final ParserRule rule) {
         return rule.getArguments().stream()
                 .map(arg -> arg.getType() + " " + arg.getName())
                 .collect(Collectors.joining(", "));
     }
 
+    static String defaultValue(final String type) {
+        switch (type) {
+            case "boolean":
+                return "false";
+            case "char":
+                return "'\\0'";
+            case "byte":
+            case "short":
+            case "int":
+                return "0";
+            case "long":
+                return "0L";
+            case "float":
+                return "0.0f";
+            case "double":
+                return "0.0";
+            default:
+                return "null";
+        }
+    }
+
+    static String boxedType(final String type) {
+        switch (type) {
+            case "boolean":
+                return "Boolean";
+            case "char":
+                return "Character";
+            case "byte":
+                return "Byte";
+            case "short":
+                return "Short";
+            case "int":
+                return "Integer";
+            case "long":
+                return "Long";
+            case "float":
+                return "Float";
+            case "double":
+                return "Double";
+            default:
+                return type;
+        }
+    }
+
+    static NonTerminal getTailCall(final ParserRule rule, final RuleAlternative alternative) {
+        if (!(alternative instanceof AtomAlternative)) {
+            return null;
+        }
+        final List<RuleAtom> atoms = ((AtomAlternative) alternative).getAtoms();
+        final RuleAtom last = atoms.get(atoms.size() - 1);
+        if (!(last instanceof NonTerminal) || !last.getName().equals(rule.getName())) {
+            return null;
+        }
+        final Pattern forward = Pattern.compile("\\s*" + Pattern.quote(rule.getReturnValue().getName())
+                + "\\s*=\\s*" + Pattern.quote(last.getVar()) + "\\s*;\\s*");
+        return last.getCode().filter(code -> forward.matcher(code).matches()).isPresent() ? (NonTerminal) last : null;
+    }
+
+    private void writeIncrementalMethods(final TabbedWriter writer) throws IOException {
+        writer.write(1, "public static " + name + "Parser incremental(final CharSequence text) throws LexingException {\n");
+        writer.write(2, "final String[] names = new String[TYPES.length];\n");
+        writer.write(2, "for (int i = 0; i < names.length; ++i) {\n");
+        writer.write(3, "names[i] = TYPES[i].name();\n");
+        writer.write(2, "}\n");
+        writer.write(2, "return new " + name + "Parser(new TokenList(" + name + "Lexer::new, names, "
+                + tokensName + "._END.ordinal(), text));\n");
+        writer.write(1, "}\n\n");
+        writer.write(1, "public void edit(final int from, final int to, final CharSequence replacement) throws LexingException {\n");
+        writer.write(2, "if (tokens == null) {\n");
+        writer.write(3, "throw new IllegalStateException(\"Parser is not incremental\");\n");
+        writer.write(2, "}\n");
+        writer.write(2, "memo.invalidate(tokens.edit(from, to, replacement));\n");
+        writer.write(1, "}\n\n");
+    }
+
+    private String entryName(final ParserRule rule) {
+        return options.isInstrumented() ? "parse" + rule.getName() + "Measured" : "parse" + rule.getName();
+    }
+
+    private void writeMetricsSetter(final TabbedWriter writer) throws IOException {
+        final String lexerName = name + "Lexer";
+        writer.write(1, "public void setMetrics(final ParseMetrics metrics) {\n");
+        writer.write(2, "this.metrics = metrics;\n");
+        writer.write(2, "if (lexer instanceof " + lexerName + ") {\n");
+        writer.write(3, "((" + lexerName + ") lexer).setMetrics(metrics);\n");
+        writer.write(2, "}\n");
+        writer.write(1, "}\n\n");
+    }
+
+    private void generateMeasuredRule(final ParserRule rule, final int index, final TabbedWriter writer) throws IOException {
+        final String params = rule.getArguments().stream()
+                .map(ParserRule.RuleArgument::getName)
+                .collect(Collectors.joining(", "));
+        final String args = rule.getArguments().stream()
+                .map(arg -> "final " + arg.getType() + " " + arg.getName())
+                .collect(Collectors.joining(", "));
+        writer.write(1, "private ");
+        writer.writeFunctionHead(rule.getReturnValue().getType(), "parse" + rule.getName(), args, THROWS);
+        writer.write(2, "final long metricsStart = System.nanoTime();\n");
+        writer.write(2, "final long metricsConsumed = consumed;\n");
+        writer.write(2, "try {\n");
+        writer.write(3, "return " + entryName(rule) + "(" + params + ");\n");
+        writer.write(2, "} finally {\n");
+        writer.write(3, "metrics.rule(" + index + ", consumed - metricsConsumed, System.nanoTime() - metricsStart);\n");
+        writer.write(2, "}\n");
+        writer.write(1, "}\n\n");
+    }
+
+    private void generateMemoizedRule(final ParserRule rule, final int index, final TabbedWriter writer) throws IOException {
+        final String type = rule.getReturnValue().getType();
+        final String result = rule.getReturnValue().getName();
+        final String params = rule.getArguments().stream()
+                .map(ParserRule.RuleArgument::getName)
+                .collect(Collectors.joining(", "));
+        final String args = rule.getArguments().stream()
+                .map(arg -> "final " + arg.getType() + " " + arg.getName())
+                .collect(Collectors.joining(", "));
+        final String body = "parse" + rule.getName() + "Body(" + params + ")";
+        writer.write(1, "private ");
+        writer.writeFunctionHead(type, entryName(rule), args, THROWS);
+        writer.write(2, "if (memo == null) {\n");
+        writer.write(3, "return " + body + ";\n");
+        writer.write(2, "}\n");
+        writeMemoLookup(rule, index, 2, writer);
+        writer.write(2, "final int memoDepth = memo.enter(" + index + ", memoStart, memoArgs);\n");
+        writer.write(2, "final " + type + " " + result + " = " + body + ";\n");
+        writer.write(2, "memo.exit(memoDepth, tokens.getIndex(), " + result + ");\n");
+        writer.write(2, "return " + result + ";\n");
+        writer.write(1, "}\n\n");
+    }
+
+    private void writeMemoLookup(final ParserRule rule, final int index, final int tabs,
+                                 final TabbedWriter writer) throws IOException {
+        final String params = rule.getArguments().stream()
+                .map(ParserRule.RuleArgument::getName)
+                .collect(Collectors.joining(", "));
+        writer.write(tabs, "final int memoStart = tokens.getIndex();\n");
+        writer.write(tabs, "final Object[] memoArgs = {" + params + "};\n");
+        writer.write(tabs, "final MemoTable.Entry memoEntry = memo.get(" + index + ", memoStart, memoArgs);\n");
+        writer.write(tabs, "if (memoEntry != null) {\n");
+        writer.write(tabs + 1, "curType = TYPES[tokens.seek(memoStart + memoEntry.getLength())];\n");
+        writer.write(tabs + 1, "return (" + boxedType(rule.getReturnValue().getType()) + ") memoEntry.getValue();\n");
+        writer.write(tabs, "}\n");
+    }
+
+    private void generatePackratRule(final ParserRule rule, final int index, final TabbedWriter writer) throws IOException {
+        final String type = rule.getReturnValue().getType();
+        final String result = rule.getReturnValue().getName();
+        final String params = rule.getArguments().stream()
+                .map(ParserRule.RuleArgument::getName)
+                .collect(Collectors.joining(", "));
+        final String args = rule.getArguments().stream()
+                .map(arg -> "final " + arg.getType() + " " + arg.getName())
+                .collect(Collectors.joining(", "));
+        final String body = "parse" + rule.getName() + "Body(" + params + ")";
+        writer.write(1, "private ");
+        writer.writeFunctionHead(type, entryName(rule), args, THROWS);
+        writer.write(2, "final int memoStart = tokens.getIndex();\n");
+        writer.write(2, "final Object[] memoArgs = " + (params.isEmpty() ? "null" : "{" + params + "}") + ";\n");
+        writer.write(2, "final int memoSlot = memo.find(" + index + ", memoStart, memoArgs);\n");
+        writer.write(2, "if (memoSlot >= 0) {\n");
+        writer.write(3, "memo.rethrow(memoSlot);\n");
+        writer.write(3, "curType = TYPES[tokens.seek(memo.getEnd(memoSlot))];\n");
+        writer.write(3, "return (" + boxedType(type) + ") memo.getValue(memoSlot);\n");
+        writer.write(2, "}\n");
+        writer.write(2, "if (!tokens.isMarked()) {\n");
+        writer.write(3, "return " + body + ";\n");
+        writer.write(2, "}\n");
+        writer.write(2, "final " + type + " " + result + ";\n");
+        writer.write(2, "try {\n");
+        writer.write(3, result + " = " + body + ";\n");
+        writer.write(2, "} catch (ParsingException | LexingException e) {\n");
+        writer.write(3, "memo.putFailure(" + index + ", memoStart, memoArgs, e);\n");
+        writer.write(3, "throw e;\n");
+        writer.write(2, "}\n");
+        writer.write(2, "memo.setWatermark(tokens.getBase());\n");
+        writer.write(2, "memo.put(" + index + ", memoStart, tokens.getIndex(), memoArgs, " + result + ");\n");
+        writer.write(2, "return " + result + ";\n");
+        writer.write(1, "}\n\n");
+    }
+
+    private void generateBacktrackingRule(final ParserRule rule, final TabbedWriter writer) throws IOException {
+        final String type = rule.getReturnValue().getType();
+        final String params = rule.getArguments().stream()
+                .map(ParserRule.RuleArgument::getName)
+                .collect(Collectors.joining(", "));
+        final Map<String, List<Integer>> candidates = new LinkedHashMap<>();
+        for (int i = 0; i < rule.getAlternatives().size(); ++i) {
+            for (final String marker : grammar.getMarkers(rule, i)) {
+                candidates.computeIfAbsent(marker, key -> new ArrayList<>()).add(i);
+            }
+        }
+        final Map<List<Integer>, List<String>> cases = new LinkedHashMap<>();
+        for (final Map.Entry<String, List<Integer>> entry : candidates.entrySet()) {
+            cases.computeIfAbsent(entry.getValue(), key -> new ArrayList<>()).add(entry.getKey());
+        }
+
+        writer.write(1, "private ");
+        writer.writeFunctionHead(type, "parse" + rule.getName() + "Body", getArgs(rule), THROWS);
+        writer.write(2, "switch (curType) {\n");
+        for (final Map.Entry<List<Integer>, List<String>> entry : cases.entrySet()) {
+            for (final String mark : entry.getValue()) {
+                writer.write(3, "case " + mark + ":\n");
+            }
+            final List<Integer> alternatives = entry.getKey();
+            final int last = alternatives.get(alternatives.size() - 1);
+            writer.write(3, "{\n");
+            if (alternatives.size() > 1) {
+                writer.write(4, "final int backtrackMark = tokens.mark();\n");
+                for (final int alternative : alternatives.subList(0, alternatives.size() - 1)) {
+                    writer.write(4, "try {\n");
+                    writer.write(5, "final " + type + " attempt = " + alternativeName(rule, alternative) + "(" + params + ");\n");
+                    writer.write(5, "tokens.release();\n");
+                    writer.write(5, "return attempt;\n");
+                    writer.write(4, "} catch (ParsingException | LexingException e) {\n");
+                    writer.write(5, "curType = TYPES[tokens.seek(backtrackMark)];\n");
+                    writer.write(4, "}\n");
+                }
+                writer.write(4, "tokens.release();\n");
+            }
+            writer.write(4, "return " + alternativeName(rule, last) + "(" + params + ");\n");
+            writer.write(3, "}\n");
+        }
+        writer.write(3, "default: {\n");
+        writer.write(4, "throw ParsingException.unexpected(lexer, \"" + String.join(", ", candidates.keySet())
+                + "\", curType.name());\n");
+        writer.write(3, "}\n");
+        writer.write(2, "}\n");
+        writer.write(1, "}\n\n");
+
+        for (int i = 0; i < rule.getAlternatives().size(); ++i) {
+            writer.write(1, "private ");
+            writer.writeFunctionHead(type, alternativeName(rule, i), getArgs(rule), THROWS);
+            writer.write(2, type + " " + rule.getReturnValue().getName() + " = " + defaultValue(type) + ";\n");
+            if (options.isInstrumented()) {
+                writer.write(2, "metrics.alternative(" + grammar.getParserRules().indexOf(rule) + ", " + i + ");\n");
+            }
+            writeAlternativeBody(rule.getAlternatives().get(i), null, 2, writer);
+            writer.write(2, "return " + rule.getReturnValue().getName() + ";\n");
+            writer.write(1, "}\n\n");
+        }
+    }
+
+    private static String alternativeName(final ParserRule rule, final int alternative) {
+        return "parse" + rule.getName() + "$" + alternative;
+    }
+
     private void generateRule(final ParserRule rule, final TabbedWriter writer) throws IOException {
+        final boolean loop = rule.getAlternatives().stream().anyMatch(alternative -> getTailCall(rule, alternative) != null);
+        final int base = loop ? 3 : 2;
+        final String method = options.isIncremental() || packrat ? "parse" + rule.getName() + "Body" : entryName(rule);
         writer.write(1, "private ");
-        writer.writeFunctionHead(rule.getReturnValue().getType(), "parse" + rule.getName(), getArgs(rule), THROWS);
-        writer.write(2, rule.getReturnValue().getType() + " " + rule.getReturnValue().getName() + " = null;\n");
-        writer.write(2, "switch (curToken.type) {");
+        writer.writeFunctionHead(rule.getReturnValue().getType(), method, getArgs(rule), THROWS);
+        if (loop) {
+            writer.write(2, "while (true) {\n");
+        }
+        final String type = rule.getReturnValue().getType();
+        writer.write(base, type + " " + rule.getReturnValue().getName() + " = " + defaultValue(type) + ";\n");
+        writer.write(base, "switch (curType) {");
         final List<Set<String>> allMarkers = new ArrayList<>();
         for (int i = 0; i < rule.getAlternatives().size(); ++i) {
-            generateAlternative(rule, i, writer);
+            generateAlternative(rule, i, base + 1, writer);
             allMarkers.add(grammar.getMarkers(rule, i));
         }
         writer.write(0,"\n");
-        writer.write(3, "default: {\n");
+        writer.write(base + 1, "default: {\n");
         final String wanted = allMarkers.stream()
                 .flatMap(Collection::stream)
                 .collect(Collectors.joining(", "));
-        writer.write(4, "throw new ParsingException(\"Expected " + wanted + " but found \" + curToken.type.name());\n");
-        writer.write(3, "}\n");
-        writer.write(2, "}\n");
-        writer.write(2, "return " + rule.getReturnValue().getName() + ";\n");
+        writer.write(base + 2, "throw ParsingException.unexpected(lexer, \"" + wanted + "\", curType.name());\n");
+        writer.write(base + 1, "}\n");
+        writer.write(base, "}\n");
+        writer.write(base, "return " + rule.getReturnValue().getName() + ";\n");
+        if (loop) {
+            writer.write(2, "}\n");
+        }
         writer.write(1, "}\n\n");
 
     }
 
-    private void generateAlternative(final ParserRule rule, final int ind, final TabbedWriter writer) throws IOException {
+    private void generateAlternative(final ParserRule rule, final int ind, final int tabs,
+                                     final TabbedWriter writer) throws IOException {
         final RuleAlternative alternative = rule.getAlternatives().get(ind);
         final Set<String> markers = grammar.getMarkers(rule, ind);
         for (final String mark : markers) {
             writer.write(0, "\n");
-            writer.write(3, "case " + mark + ":");
+            writer.write(tabs, "case " + mark + ":");
         }
         writer.write(0, " {\n");
-        writer.write(4, alternative.getInitCode().orElse("") + "\n");
+        if (options.isInstrumented()) {
+            writer.write(tabs + 1, "metrics.alternative(" + grammar.getParserRules().indexOf(rule) + ", " + ind + ");\n");
+        }
+        final NonTerminal tailCall = getTailCall(rule, alternative);
+        writeAlternativeBody(alternative, tailCall, tabs + 1, writer);
+        if (tailCall == null) {
+            writer.write(tabs + 1, "break;\n");
+        } else {
+            writeTailCall(rule, tailCall, tabs + 1, writer);
+        }
+        writer.write(tabs, "}");
+
+    }
+
+    private void writeAlternativeBody(final RuleAlternative alternative, final NonTerminal tailCall, final int tabs,
+                                      final TabbedWriter writer) throws IOException {
+        writer.write(tabs, alternative.getInitCode().orElse("") + "\n");
         if (alternative instanceof EpsilonAlternative) {
             final EpsilonAlternative eps = (EpsilonAlternative) alternative;
-            writer.write(4, eps.getCode().orElse("") + "\n");
+            writer.write(tabs, eps.getCode().orElse("") + "\n");
+        } else {
+            final List<RuleAtom> atoms = ((AtomAlternative) alternative).getAtoms();
+            final int count = tailCall == null ? atoms.size() : atoms.size() - 1;
+            for (int i = 0; i < count; ++i) {
+                writeAtom(atoms, i, tabs, writer);
+            }
+        }
+    }
+
+    private void writeTailCall(final ParserRule rule, final NonTerminal call, final int tabs,
+                               final TabbedWriter writer) throws IOException {
+        final List<ParserRule.RuleArgument> args = rule.getArguments();
+        final List<Integer> changed = new ArrayList<>();
+        for (int i = 0; i < args.size(); ++i) {
+            if (!call.getParams().get(i).trim().equals(args.get(i).getName())) {
+                changed.add(i);
+            }
+        }
+        if (changed.size() == 1) {
+            final int i = changed.get(0);
+            writer.write(tabs, args.get(i).getName() + " = " + call.getParams().get(i) + ";\n");
         } else {
-            for (final RuleAtom atom : ((AtomAlternative) alternative).getAtoms()) {
-                writeAtom(atom, writer);
+            for (final int i : changed) {
+                writer.write(tabs, "final " + args.get(i).getType() + " " + args.get(i).getName() + "$next = "
+                        + call.getParams().get(i) + ";\n");
             }
+            for (final int i : changed) {
+                writer.write(tabs, args.get(i).getName() + " = " + args.get(i).getName() + "$next;\n");
+            }
+        }
+        if (options.isIncremental()) {
+            final int index = grammar.getParserRules().indexOf(rule);
+            writer.write(tabs, "if (memo != null) {\n");
+            writeMemoLookup(rule, index, tabs + 1, writer);
+            writer.write(tabs + 1, "memo.enter(" + index + ", memoStart, memoArgs);\n");
+            writer.write(tabs, "}\n");
         }
-        writer.write(4, "break;\n");
-        writer.write(3, "}");
+        writer.write(tabs, "continue;\n");
+    }
 
+    static boolean isUsed(final String var, final List<RuleAtom> atoms, final int from) {
+        final Pattern usage = Pattern.compile("(?<![\\w$.])" + Pattern.quote(var) + "(?![\\w$])");
+        for (int i = from; i < atoms.size(); ++i) {
+            final RuleAtom atom = atoms.get(i);
+            if (atom.getCode().map(code -> usage.matcher(code).find()).orElse(false)) {
+                return true;
+            }
+            if (atom instanceof NonTerminal && ((NonTerminal) atom).getParams().stream().anyMatch(param -> usage.matcher(param).find())) {
+                return true;
+            }
+        }
+        return false;
     }
 
-    private void writeAtom(final RuleAtom atom, final TabbedWriter writer) throws IOException {
+    private void writeAtom(final List<RuleAtom> atoms, final int ind, final int tabs, final TabbedWriter writer) throws IOException {
+        final RuleAtom atom = atoms.get(ind);
         if (atom instanceof Terminal) {
-            writer.write(4, "if (curToken.type != " + tokensName + "." + atom.getName() + ") {\n");
-            writer.write(5, "throw new LexingException(\"Expected " + atom.getName() + " but found \" + curToken.type.name());\n");
-            writer.write(4, "}\n");
-            writer.write(4, "TokenData " + atom.getVar() + " = curToken.data;\n");
-            writer.write(4, atom.getCode().orElse("") + "\n");
-            writer.write(4, "curToken = lexer.getNext();\n");
+            writer.write(tabs, "if (curType != " + tokensName + "." + atom.getName() + ") {\n");
+            writer.write(tabs + 1, "throw LexingException.unexpected(lexer, \"" + atom.getName() + "\", curType.name());\n");
+            writer.write(tabs, "}\n");
+            if (isUsed(atom.getVar(), atoms, ind)) {
+                writer.write(tabs, "TokenData " + atom.getVar() + " = lexer.getData();\n");
+            }
+            writer.write(tabs, atom.getCode().orElse("") + "\n");
+            if (options.isInstrumented()) {
+                writer.write(tabs, "++consumed;\n");
+            }
+            writer.write(tabs, "curType = TYPES[lexer.advance()];\n");
         } else {
             final NonTerminal nonTerm = (NonTerminal) atom;
-            writer.write(4, nonTermToType.get(nonTerm.getName()) + " " + nonTerm.getVar() + " = ");
+            writer.write(tabs, nonTermToType.get(nonTerm.getName()) + " " + nonTerm.getVar() + " = ");
             final String params = String.join(", ", nonTerm.getParams());
             writer.write(0, "parse" + nonTerm.getName() + "(" + params + ");\n");
-            writer.write(4, nonTerm.getCode().orElse("") + "\n");
+            writer.write(tabs, nonTerm.getCode().orElse("") + "\n");
         }
     }
 }
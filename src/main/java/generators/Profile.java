@@ -0,0 +1,81 @@
+package generators;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class Profile {
+    private final Map<String, Long> tokens;
+    private final Map<String, Map<Integer, Long>> alternatives;
+
+    public Profile() {
+        this.tokens = new TreeMap<>();
+        this.alternatives = new TreeMap<>();
+    }
+
+    public static Profile load(final Path path) throws Exception {
+        final Profile profile = new Profile();
+        final List<String> lines;
+        try {
+            lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new Exception("Cannot read profile " + path, e);
+        }
+        for (int i = 0; i < lines.size(); ++i) {
+            final String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            final String[] parts = line.split("\\s+");
+            try {
+                if (parts[0].equals("token") && parts.length == 3) {
+                    profile.addToken(parts[1], Long.parseLong(parts[2]));
+                    continue;
+                }
+                if (parts[0].equals("alternative") && parts.length == 4) {
+                    profile.addAlternative(parts[1], Integer.parseInt(parts[2]), Long.parseLong(parts[3]));
+                    continue;
+                }
+            } catch (NumberFormatException e) {
+                throw new Exception(path + ":" + (i + 1) + ": bad count in profile line \"" + line + "\"");
+            }
+            throw new Exception(path + ":" + (i + 1) + ": unknown profile line \"" + line + "\"");
+        }
+        return profile;
+    }
+
+    public void addToken(final String token, final long hits) {
+        tokens.merge(token, hits, Long::sum);
+    }
+
+    public void addAlternative(final String rule, final int alternative, final long hits) {
+        alternatives.computeIfAbsent(rule, key -> new TreeMap<>()).merge(alternative, hits, Long::sum);
+    }
+
+    public long getTokenHits(final String token) {
+        return tokens.getOrDefault(token, 0L);
+    }
+
+    public long getAlternativeHits(final String rule, final int alternative) {
+        return alternatives.getOrDefault(rule, new TreeMap<>()).getOrDefault(alternative, 0L);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder res = new StringBuilder();
+        for (final Map.Entry<String, Long> token : tokens.entrySet()) {
+            res.append("token ").append(token.getKey()).append(' ').append(token.getValue()).append('\n');
+        }
+        for (final Map.Entry<String, Map<Integer, Long>> rule : alternatives.entrySet()) {
+            for (final Map.Entry<Integer, Long> alternative : rule.getValue().entrySet()) {
+                res.append("alternative ").append(rule.getKey()).append(' ').append(alternative.getKey())
+                        .append(' ').append(alternative.getValue()).append('\n');
+            }
+        }
+        return res.toString();
+    }
+}
@@ -0,0 +1,11 @@
+package generators;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+public interface SourceSink {
+    SourceSink FILES = (path, content) -> TabbedWriter.writeIfChanged(path, content.getBytes(StandardCharsets.UTF_8));
+
+    void write(final Path path, final String content) throws IOException;
+}
@@ -0,0 +1,137 @@
+package generators;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class StringLiterals {
+    private final static int MAX_CONSTANT_BYTES = 65535;
+
+    private StringLiterals() {
+    }
+
+    private static int constantBytes(final int c) {
+        if (c != 0 && c < 0x80) {
+            return 1;
+        }
+        return c < 0x800 ? 2 : 3;
+    }
+
+    public static List<String> quoteChunks(final int[] chars) {
+        final List<String> res = new ArrayList<>();
+        int from = 0;
+        int bytes = 0;
+        for (int i = 0; i < chars.length; ++i) {
+            final int size = constantBytes(chars[i]);
+            if (bytes + size > MAX_CONSTANT_BYTES) {
+                res.add(quote(Arrays.copyOfRange(chars, from, i)));
+                from = i;
+                bytes = 0;
+            }
+            bytes += size;
+        }
+        res.add(quote(Arrays.copyOfRange(chars, from, chars.length)));
+        return res;
+    }
+
+    public static String quote(final int[] chars) {
+        final StringBuilder res = new StringBuilder("\"");
+        for (final int c : chars) {
+            if (c < 0 || c > Character.MAX_VALUE) {
+                throw new IllegalArgumentException("Value does not fit into char: " + c);
+            }
+            switch (c) {
+                case '\n':
+                    res.append("\\n");
+                    break;
+                case '\r':
+                    res.append("\\r");
+                    break;
+                case '"':
+                    res.append("\\\"");
+                    break;
+                case '\\':
+                    res.append("\\\\");
+                    break;
+                default:
+                    if (c >= 0x20 && c < 0x7f) {
+                        res.append((char) c);
+                    } else {
+                        res.append(String.format("\\u%04x", c));
+                    }
+            }
+        }
+        return res.append('"').toString();
+    }
+
+    public static String quoteChar(final int c) {
+        switch (c) {
+            case '\t':
+                return "'\\t'";
+            case '\n':
+                return "'\\n'";
+            case '\r':
+                return "'\\r'";
+            case '\'':
+                return "'\\''";
+            case '\\':
+                return "'\\\\'";
+            default:
+                if (c >= 0x20 && c < 0x7f) {
+                    return "'" + (char) c + "'";
+                }
+                return "(char) " + c;
+        }
+    }
+
+    public static String unquote(final String literal) {
+        final String body = literal.substring(1, literal.length() - 1);
+        final StringBuilder res = new StringBuilder();
+        for (int i = 0; i < body.length(); ++i) {
+            final char c = body.charAt(i);
+            if (c != '\\' || i + 1 == body.length()) {
+                res.append(c);
+                continue;
+            }
+            final char next = body.charAt(++i);
+            switch (next) {
+                case 't':
+                    res.append('\t');
+                    break;
+                case 'b':
+                    res.append('\b');
+                    break;
+                case 'n':
+                    res.append('\n');
+                    break;
+                case 'r':
+                    res.append('\r');
+                    break;
+                case 'f':
+                    res.append('\f');
+                    break;
+                case 'u': {
+                    while (body.charAt(i + 1) == 'u') {
+                        ++i;
+                    }
+                    res.append((char) Integer.parseInt(body.substring(i + 1, i + 5), 16));
+                    i += 4;
+                    break;
+                }
+                default:
+                    if (next >= '0' && next <= '7') {
+                        int end = i + 1;
+                        final int maxLen = next <= '3' ? 3 : 2;
+                        while (end < body.length() && end - i < maxLen && body.charAt(end) >= '0' && body.charAt(end) <= '7') {
+                            ++end;
+                        }
+                        res.append((char) Integer.parseInt(body.substring(i, end), 8));
+                        i = end - 1;
+                    } else {
+                        res.append(next);
+                    }
+            }
+        }
+        return res.toString();
+    }
+}
@@ -3,16 +3,47 @@ package generators;
 import input.GrammarDescription;
 
 import java.io.IOException;
-import java.io.Writer;
+import java.io.StringWriter;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
 
 public class TabbedWriter implements AutoCloseable {
     private final static String TAB = "    ";
-    private final Writer writer;
+    private final Path path;
+    private final SourceSink sink;
+    private final StringWriter writer;
 
     public TabbedWriter(final Path path) throws IOException {
-        this.writer = Files.newBufferedWriter(path);
+        this(path, SourceSink.FILES);
+    }
+
+    public TabbedWriter(final Path path, final SourceSink sink) throws IOException {
+        this.path = path;
+        this.sink = sink;
+        this.writer = new StringWriter();
+    }
+
+    public static boolean writeIfChanged(final Path path, final byte[] content) throws IOException {
+        if (Files.isRegularFile(path) && Arrays.equals(Files.readAllBytes(path), content)) {
+            return false;
+        }
+        final Path target = path.toAbsolutePath();
+        final Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            Files.write(temp, content);
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return true;
     }
 
     public void writeTabs(int cnt) throws IOException {
@@ -26,6 +57,18 @@ public class TabbedWriter implements AutoCloseable {
         writer.write(s);
     }
 
+    public void writeString(final int tabs, final int[] chars) throws IOException {
+        final List<String> chunks = StringLiterals.quoteChunks(chars);
+        if (chunks.size() == 1) {
+            writer.write(chunks.get(0));
+            return;
+        }
+        writer.write("String.join(\"\",\n");
+        for (int i = 0; i < chunks.size(); ++i) {
+            write(tabs, chunks.get(i) + (i + 1 < chunks.size() ? ",\n" : ")"));
+        }
+    }
+
     public void writeHeader(final GrammarDescription grammar) throws IOException {
         String header = grammar.getHeader();
         header = header.substring(1);
@@ -43,6 +86,6 @@ public class TabbedWriter implements AutoCloseable {
 
     @Override
     public void close() throws Exception {
-        writer.close();
+        sink.write(path, writer.toString());
     }
 }
@@ -0,0 +1,328 @@
+package generators;
+
+import input.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+
+public class TableParserGenerator {
+    private final static String THROWS = "ParsingException, LexingException";
+    private final static String NESTED = "    ";
+
+    private final Path output;
+    private final SourceSink sink;
+    private final String name;
+    private final GrammarDescription grammar;
+    private final String tokensName;
+    private final Map<String, String> nonTermToType;
+    private final Map<String, String> nonTermToResult;
+    private final List<String> tokenNames;
+
+    public TableParserGenerator(final Path output, final String name, final GrammarDescription grammar) {
+        this(output, name, grammar, SourceSink.FILES);
+    }
+
+    public TableParserGenerator(final Path output, final String name, final GrammarDescription grammar,
+                                final SourceSink sink) {
+        this.output = output;
+        this.sink = sink;
+        this.name = name;
+        this.grammar = grammar;
+        this.tokensName = name + "Tokens";
+        this.nonTermToType = new HashMap<>();
+        this.nonTermToResult = new HashMap<>();
+        for (final ParserRule rule : grammar.getParserRules()) {
+            nonTermToType.put(rule.getName(), rule.getReturnValue().getType());
+            nonTermToResult.put(rule.getName(), rule.getReturnValue().getName());
+        }
+        final Set<String> skips = grammar.getSkips().stream()
+                .map(TokenRule::getName)
+                .collect(Collectors.toSet());
+        this.tokenNames = grammar.getTokenRules().stream()
+                .map(TokenRule::getName)
+                .filter(token -> !skips.contains(token))
+                .collect(Collectors.toList());
+        tokenNames.add(GrammarDescription.END);
+    }
+
+    public void generate() throws Exception {
+        try (final TabbedWriter writer = new TabbedWriter(output.resolve(name + "Parser.java"), sink)) {
+            writer.writeHeader(grammar);
+            writer.write(0, "\n");
+            writer.write(0, "import java.io.Closeable;\n");
+            ParserGenerator.writeBatchImports(writer, grammar);
+            writer.write(0, "import runtime.ParseFrame;\n");
+            writer.write(0, "import runtime.PipelinedCursor;\n");
+            writer.write(0, "import runtime.PredictTable;\n");
+            writer.write(0, "import runtime.TokenCursor;\n");
+            writer.write(0, "import runtime.TokenData;\n");
+            writer.write(0, "import runtime.LexingException;\n");
+            writer.write(0, "import runtime.ParsingException;\n\n");
+            writer.write(0, "public class " + name + "Parser implements Closeable {\n");
+            writer.write(1, "private final static " + tokensName + "[] TYPES = " + tokensName + ".values();\n");
+            writePredictTable(writer);
+            writer.write(1, "private final TokenCursor lexer;\n");
+            writer.write(1, "private final PipelinedCursor pipeline;\n");
+            writer.write(1, "private " + tokensName + " curType;\n\n");
+            writer.write(1, "public " + name + "Parser(final TokenCursor lexer) {\n");
+            writer.write(2, "this(lexer, null);\n");
+            writer.write(1, "}\n\n");
+            writer.write(1, "private " + name + "Parser(final TokenCursor lexer, final PipelinedCursor pipeline) {\n");
+            writer.write(2, "this.lexer = lexer;\n");
+            writer.write(2, "this.pipeline = pipeline;\n");
+            writer.write(2, "this.curType = null;\n");
+            writer.write(1, "}\n\n");
+            ParserGenerator.writePipelinedMethods(writer, name, tokensName);
+            ParserGenerator.writeBatchMethod(writer, name, grammar);
+
+            final ParserRule mainRule = grammar.getStart();
+            final String mainRuleArgs = mainRule.getArguments().stream()
+                    .map(arg -> arg.getType() + " " + arg.getName())
+                    .collect(Collectors.joining(", "));
+            final String mainRuleParams = mainRule.getArguments().stream()
+                    .map(ParserRule.RuleArgument::getName)
+                    .collect(Collectors.joining(", "));
+            final String result = mainRule.getReturnValue().getName();
+            writer.write(1, "public ");
+            writer.writeFunctionHead(mainRule.getReturnValue().getType(), "mainRule", mainRuleArgs, THROWS);
+            writer.write(2, "try {\n");
+            writer.write(3, "curType = TYPES[lexer.advance()];\n");
+            writer.write(3, "final ParseFrame root = frame" + mainRule.getName() + "(" + mainRuleParams + ");\n");
+            writer.write(3, "final " + mainRule.getReturnValue().getType() + " " + result + " = ((Frame"
+                    + mainRule.getName() + ") ParseFrame.run(root))." + result + ";\n");
+            writer.write(3, "if (curType != " + tokensName + "._END) {\n");
+            writer.write(4, "throw ParsingException.trailing(lexer, curType.name());\n");
+            writer.write(3, "}\n");
+            writer.write(3, "return " + result + ";\n");
+            ParserGenerator.writeCloseOnFailure(writer);
+            writer.write(1, "}\n\n");
+
+            writer.write(1, "private int predict(final int rule) throws ParsingException {\n");
+            writer.write(2, "final int alternative = PREDICT.predict(rule, curType.ordinal());\n");
+            writer.write(2, "if (alternative < 0) {\n");
+            writer.write(3, "throw ParsingException.unexpected(lexer, EXPECTED[rule], curType.name());\n");
+            writer.write(2, "}\n");
+            writer.write(2, "return alternative;\n");
+            writer.write(1, "}\n");
+
+            final List<ParserRule> rules = grammar.getParserRules();
+            for (int i = 0; i < rules.size(); ++i) {
+                generateRule(rules.get(i), i, writer);
+            }
+            writer.write(0, "}\n");
+        }
+    }
+
+    private void writePredictTable(final TabbedWriter writer) throws IOException {
+        final List<ParserRule> rules = grammar.getParserRules();
+        final int[] predict = new int[rules.size() * tokenNames.size()];
+        final List<String> expected = new ArrayList<>();
+        for (int r = 0; r < rules.size(); ++r) {
+            final ParserRule rule = rules.get(r);
+            final List<String> wanted = new ArrayList<>();
+            for (int i = 0; i < rule.getAlternatives().size(); ++i) {
+                for (final String marker : grammar.getMarkers(rule, i)) {
+                    predict[r * tokenNames.size() + tokenNames.indexOf(marker)] = i + 1;
+                    wanted.add(marker);
+                }
+            }
+            expected.add(StringLiterals.quote(String.join(", ", wanted).chars().toArray()));
+        }
+        writePacked(writer, predict, rules.size(), tokenNames.size());
+        writer.write(1, "private final static String[] EXPECTED = {" + String.join(", ", expected) + "};\n");
+    }
+
+    private static void writePacked(final TabbedWriter writer, final int[] table, final int rows,
+                                    final int width) throws IOException {
+        final List<List<Integer>> columns = new ArrayList<>();
+        final List<Integer> order = new ArrayList<>();
+        for (int r = 0; r < rows; ++r) {
+            final List<Integer> used = new ArrayList<>();
+            for (int t = 0; t < width; ++t) {
+                if (table[r * width + t] != 0) {
+                    used.add(t);
+                }
+            }
+            columns.add(used);
+            order.add(r);
+        }
+        order.sort(Comparator.comparingInt((Integer r) -> -columns.get(r).size()));
+        int[] owners = new int[width];
+        int[] alternatives = new int[width];
+        int length = 0;
+        final int[] bases = new int[rows * 2];
+        for (final int r : order) {
+            final List<Integer> used = columns.get(r);
+            if (used.isEmpty()) {
+                continue;
+            }
+            int base = 0;
+            search:
+            while (true) {
+                for (final int t : used) {
+                    if (base + t < owners.length && owners[base + t] != 0) {
+                        ++base;
+                        continue search;
+                    }
+                }
+                break;
+            }
+            if (base + width > owners.length) {
+                owners = Arrays.copyOf(owners, Math.max(owners.length * 2, base + width));
+                alternatives = Arrays.copyOf(alternatives, owners.length);
+            }
+            for (final int t : used) {
+                owners[base + t] = r + 1;
+                alternatives[base + t] = table[r * width + t];
+                length = Math.max(length, base + t + 1);
+            }
+            bases[2 * r] = base >>> 16;
+            bases[2 * r + 1] = base & 0xFFFF;
+        }
+        writer.write(1, "private final static PredictTable PREDICT = new PredictTable(\n");
+        writer.write(3, "");
+        writer.writeString(4, bases);
+        writer.write(0, ",\n");
+        writer.write(3, "");
+        writer.writeString(4, Arrays.copyOf(owners, length));
+        writer.write(0, ",\n");
+        writer.write(3, "");
+        writer.writeString(4, Arrays.copyOf(alternatives, length));
+        writer.write(0, ");\n");
+    }
+
+    private void generateRule(final ParserRule rule, final int index, final TabbedWriter writer) throws IOException {
+        final String frame = "Frame" + rule.getName();
+        writer.write(0, "\n");
+        writer.write(1, "private abstract class " + frame + " extends ParseFrame {\n");
+        for (final ParserRule.RuleArgument arg : rule.getArguments()) {
+            writer.write(2, arg.getType() + " " + arg.getName() + ";\n");
+        }
+        writer.write(2, rule.getReturnValue().getType() + " " + rule.getReturnValue().getName() + ";\n");
+        writer.write(1, "}\n\n");
+
+        final String args = rule.getArguments().stream()
+                .map(arg -> "final " + arg.getType() + " " + arg.getName())
+                .collect(Collectors.joining(", "));
+        writer.write(1, "private ");
+        writer.writeFunctionHead(frame, "frame" + rule.getName(), args, "ParsingException");
+        writer.write(2, "final " + frame + " frame;\n");
+        writer.write(2, "switch (predict(" + index + ")) {\n");
+        final int count = rule.getAlternatives().size();
+        for (int i = 0; i < count; ++i) {
+            writer.write(3, i + 1 < count ? "case " + i + ":\n" : "default:\n");
+            writer.write(4, "frame = new " + frame + "$" + i + "();\n");
+            writer.write(4, "break;\n");
+        }
+        writer.write(2, "}\n");
+        for (final ParserRule.RuleArgument arg : rule.getArguments()) {
+            writer.write(2, "frame." + arg.getName() + " = " + arg.getName() + ";\n");
+        }
+        writer.write(2, "return frame;\n");
+        writer.write(1, "}\n");
+
+        for (int i = 0; i < count; ++i) {
+            generateAlternative(rule, i, writer);
+        }
+    }
+
+    private void generateAlternative(final ParserRule rule, final int ind, final TabbedWriter writer) throws IOException {
+        final RuleAlternative alternative = rule.getAlternatives().get(ind);
+        final List<RuleAtom> atoms = alternative instanceof AtomAlternative
+                ? ((AtomAlternative) alternative).getAtoms()
+                : Collections.emptyList();
+        final NonTerminal tailCall = ParserGenerator.getTailCall(rule, alternative);
+        final List<String> fields = new ArrayList<>();
+        final List<List<String>> steps = new ArrayList<>();
+        List<String> step = new ArrayList<>();
+
+        final ActionCode init = ActionCode.hoist(alternative.getInitCode().orElse(""));
+        addFields(init, fields);
+        addCode(init, step);
+        if (alternative instanceof EpsilonAlternative) {
+            final ActionCode code = ActionCode.hoist(((EpsilonAlternative) alternative).getCode().orElse(""));
+            addFields(code, fields);
+            addCode(code, step);
+        }
+        for (int i = 0; i < atoms.size(); ++i) {
+            final RuleAtom atom = atoms.get(i);
+            if (atom instanceof Terminal) {
+                step.add("if (curType != " + tokensName + "." + atom.getName() + ") {");
+                step.add(NESTED + "throw LexingException.unexpected(lexer, \"" + atom.getName() + "\", curType.name());");
+                step.add("}");
+                if (ParserGenerator.isUsed(atom.getVar(), atoms, i)) {
+                    fields.add("TokenData " + atom.getVar());
+                    step.add(atom.getVar() + " = lexer.getData();");
+                }
+                final ActionCode code = ActionCode.hoist(atom.getCode().orElse(""));
+                addFields(code, fields);
+                addCode(code, step);
+                step.add("curType = TYPES[lexer.advance()];");
+                continue;
+            }
+            final NonTerminal nonTerm = (NonTerminal) atom;
+            final String call = "frame" + nonTerm.getName() + "(" + String.join(", ", nonTerm.getParams()) + ")";
+            if (nonTerm == tailCall) {
+                step.add("state = TAIL;");
+                step.add("return " + call + ";");
+                break;
+            }
+            step.add("state = " + (steps.size() + 1) + ";");
+            step.add("return " + call + ";");
+            steps.add(step);
+            step = new ArrayList<>();
+            fields.add(nonTermToType.get(nonTerm.getName()) + " " + nonTerm.getVar());
+            step.add(nonTerm.getVar() + " = ((Frame" + nonTerm.getName() + ") child)."
+                    + nonTermToResult.get(nonTerm.getName()) + ";");
+            final ActionCode code = ActionCode.hoist(nonTerm.getCode().orElse(""));
+            addFields(code, fields);
+            addCode(code, step);
+        }
+        if (tailCall == null) {
+            step.add("return null;");
+        }
+        steps.add(step);
+
+        final String frame = "Frame" + rule.getName();
+        writer.write(0, "\n");
+        writer.write(1, "private final class " + frame + "$" + ind + " extends " + frame + " {\n");
+        for (final String field : fields) {
+            writer.write(2, "private " + field + ";\n");
+        }
+        if (!fields.isEmpty()) {
+            writer.write(0, "\n");
+        }
+        writer.write(2, "@Override\n");
+        writer.write(2, "protected ParseFrame step() throws " + THROWS + " {\n");
+        writer.write(3, "switch (state) {\n");
+        for (int i = 0; i < steps.size(); ++i) {
+            writer.write(4, "case " + i + ": {\n");
+            for (final String line : steps.get(i)) {
+                writer.write(5, line + "\n");
+            }
+            writer.write(4, "}\n");
+        }
+        writer.write(4, "default: {\n");
+        writer.write(5, "throw new IllegalStateException(\"Unexpected parser state \" + state);\n");
+        writer.write(4, "}\n");
+        writer.write(3, "}\n");
+        writer.write(2, "}\n");
+        writer.write(1, "}\n");
+    }
+
+    private static void addCode(final ActionCode code, final List<String> step) {
+        for (final String line : code.getCode().split("\n")) {
+            if (!line.trim().isEmpty()) {
+                step.add(line.trim());
+            }
+        }
+    }
+
+    private static void addFields(final ActionCode code, final List<String> fields) {
+        for (final ActionCode.Declaration declaration : code.getDeclarations()) {
+            fields.add(declaration.getType() + " " + declaration.getName());
+        }
+    }
+}
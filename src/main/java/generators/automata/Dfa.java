@@ -0,0 +1,293 @@
+package generators.automata;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+public class Dfa {
+    private final int[] bounds;
+    private final int[] boundClasses;
+    private final int classCount;
+    private final int[][] transitions;
+    private final int[] accepts;
+
+    private Dfa(final int[] bounds, final int[] boundClasses, final int classCount,
+                final int[][] transitions, final int[] accepts) {
+        this.bounds = bounds;
+        this.boundClasses = boundClasses;
+        this.classCount = classCount;
+        this.transitions = transitions;
+        this.accepts = accepts;
+    }
+
+    public static Dfa build(final List<Regex> rules) {
+        final int[] priorities = new int[rules.size()];
+        for (int i = 0; i < priorities.length; ++i) {
+            priorities[i] = i;
+        }
+        return build(rules, priorities);
+    }
+
+    public static Dfa build(final List<Regex> rules, final int[] priorities) {
+        final Nfa nfa = Nfa.fromRules(rules);
+        final int[] intervals = collectIntervals(nfa);
+
+        final List<BitSet> subsets = new ArrayList<>();
+        final Map<BitSet, Integer> subsetIds = new HashMap<>();
+        final List<int[]> rawTransitions = new ArrayList<>();
+        final Deque<Integer> queue = new ArrayDeque<>();
+        final BitSet start = new BitSet();
+        start.set(0);
+        final BitSet startClosure = nfa.closure(start);
+        subsets.add(startClosure);
+        subsetIds.put(startClosure, 0);
+        queue.add(0);
+        while (!queue.isEmpty()) {
+            final int id = queue.poll();
+            final BitSet[] moves = new BitSet[intervals.length];
+            final BitSet subset = subsets.get(id);
+            for (int s = subset.nextSetBit(0); s >= 0; s = subset.nextSetBit(s + 1)) {
+                for (final Nfa.Edge edge : nfa.getEdges(s)) {
+                    for (int i = 0; i < edge.ranges.length; i += 2) {
+                        final int from = Arrays.binarySearch(intervals, edge.ranges[i]);
+                        for (int k = from; k < intervals.length && intervals[k] <= edge.ranges[i + 1]; ++k) {
+                            if (moves[k] == null) {
+                                moves[k] = new BitSet();
+                            }
+                            moves[k].set(edge.target);
+                        }
+                    }
+                }
+            }
+            final int[] row = new int[intervals.length];
+            for (int k = 0; k < intervals.length; ++k) {
+                if (moves[k] == null) {
+                    row[k] = -1;
+                    continue;
+                }
+                final BitSet target = prioritize(nfa, nfa.closure(moves[k]), priorities);
+                Integer targetId = subsetIds.get(target);
+                if (targetId == null) {
+                    targetId = subsets.size();
+                    subsets.add(target);
+                    subsetIds.put(target, targetId);
+                    queue.add(targetId);
+                }
+                row[k] = targetId;
+            }
+            rawTransitions.add(row);
+        }
+
+        final int[] rawAccepts = new int[subsets.size()];
+        for (int i = 0; i < subsets.size(); ++i) {
+            rawAccepts[i] = -1;
+            final BitSet subset = subsets.get(i);
+            for (int s = subset.nextSetBit(0); s >= 0; s = subset.nextSetBit(s + 1)) {
+                final int rule = nfa.getAccept(s);
+                if (rule >= 0 && (rawAccepts[i] < 0 || priorities[rule] < priorities[rawAccepts[i]])) {
+                    rawAccepts[i] = rule;
+                }
+            }
+        }
+        pruneDeadStates(rawTransitions, rawAccepts);
+        return minimize(intervals, rawTransitions, rawAccepts);
+    }
+
+    private static BitSet prioritize(final Nfa nfa, final BitSet subset, final int[] priorities) {
+        int best = -1;
+        for (int s = subset.nextSetBit(0); s >= 0; s = subset.nextSetBit(s + 1)) {
+            final int rule = nfa.getAccept(s);
+            if (rule >= 0 && (best < 0 || priorities[rule] < priorities[best])) {
+                best = rule;
+            }
+        }
+        if (best < 0) {
+            return subset;
+        }
+        for (int s = subset.nextSetBit(0); s >= 0; s = subset.nextSetBit(s + 1)) {
+            final int owner = nfa.getOwner(s);
+            if (owner >= 0 && priorities[owner] > priorities[best]) {
+                subset.clear(s);
+            }
+        }
+        return subset;
+    }
+
+    private static int[] collectIntervals(final Nfa nfa) {
+        final TreeSet<Integer> points = new TreeSet<>();
+        points.add(0);
+        for (int s = 0; s < nfa.size(); ++s) {
+            for (final Nfa.Edge edge : nfa.getEdges(s)) {
+                for (int i = 0; i < edge.ranges.length; i += 2) {
+                    points.add(edge.ranges[i]);
+                    if (edge.ranges[i + 1] < Regex.MAX_CHAR) {
+                        points.add(edge.ranges[i + 1] + 1);
+                    }
+                }
+            }
+        }
+        return points.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static void pruneDeadStates(final List<int[]> transitions, final int[] accepts) {
+        final boolean[] alive = new boolean[accepts.length];
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int s = 0; s < accepts.length; ++s) {
+                if (alive[s]) {
+                    continue;
+                }
+                boolean reaches = accepts[s] >= 0;
+                for (final int target : transitions.get(s)) {
+                    reaches |= target >= 0 && alive[target];
+                }
+                if (reaches) {
+                    alive[s] = true;
+                    changed = true;
+                }
+            }
+        }
+        for (final int[] row : transitions) {
+            for (int k = 0; k < row.length; ++k) {
+                if (row[k] >= 0 && !alive[row[k]]) {
+                    row[k] = -1;
+                }
+            }
+        }
+    }
+
+    private static Dfa minimize(final int[] intervals, final List<int[]> transitions, final int[] accepts) {
+        final int n = accepts.length;
+        int[] block = new int[n];
+        int blockCount = assignBlocks(block, s -> Arrays.asList(accepts[s]));
+        while (true) {
+            final int[] prev = block;
+            final int[] next = new int[n];
+            final int nextCount = assignBlocks(next, s -> {
+                final List<Integer> signature = new ArrayList<>();
+                signature.add(prev[s]);
+                for (final int target : transitions.get(s)) {
+                    signature.add(target < 0 ? -1 : prev[target]);
+                }
+                return signature;
+            });
+            block = next;
+            if (nextCount == blockCount) {
+                break;
+            }
+            blockCount = nextCount;
+        }
+
+        final int[][] merged = new int[blockCount][];
+        final int[] mergedAccepts = new int[blockCount];
+        for (int s = 0; s < n; ++s) {
+            if (merged[block[s]] != null) {
+                continue;
+            }
+            final int[] row = new int[intervals.length];
+            for (int k = 0; k < intervals.length; ++k) {
+                final int target = transitions.get(s)[k];
+                row[k] = target < 0 ? -1 : block[target];
+            }
+            merged[block[s]] = row;
+            mergedAccepts[block[s]] = accepts[s];
+        }
+
+        final Map<List<Integer>, Integer> columnIds = new HashMap<>();
+        final int[] intervalClasses = new int[intervals.length];
+        for (int k = 0; k < intervals.length; ++k) {
+            final List<Integer> column = new ArrayList<>();
+            for (final int[] row : merged) {
+                column.add(row[k]);
+            }
+            Integer id = columnIds.get(column);
+            if (id == null) {
+                id = columnIds.size();
+                columnIds.put(column, id);
+            }
+            intervalClasses[k] = id;
+        }
+        final int classCount = columnIds.size();
+        final int[][] compressed = new int[blockCount][classCount];
+        for (int s = 0; s < blockCount; ++s) {
+            for (int k = 0; k < intervals.length; ++k) {
+                compressed[s][intervalClasses[k]] = merged[s][k];
+            }
+        }
+
+        final List<Integer> bounds = new ArrayList<>();
+        final List<Integer> boundClasses = new ArrayList<>();
+        for (int k = 0; k < intervals.length; ++k) {
+            if (boundClasses.isEmpty() || boundClasses.get(boundClasses.size() - 1) != intervalClasses[k]) {
+                bounds.add(intervals[k]);
+                boundClasses.add(intervalClasses[k]);
+            }
+        }
+        return new Dfa(bounds.stream().mapToInt(Integer::intValue).toArray(),
+                boundClasses.stream().mapToInt(Integer::intValue).toArray(),
+                classCount, compressed, mergedAccepts);
+    }
+
+    private interface Signature {
+        List<Integer> of(int state);
+    }
+
+    private static int assignBlocks(final int[] block, final Signature signature) {
+        final Map<List<Integer>, Integer> ids = new HashMap<>();
+        for (int s = 0; s < block.length; ++s) {
+            final List<Integer> key = signature.of(s);
+            Integer id = ids.get(key);
+            if (id == null) {
+                id = ids.size();
+                ids.put(key, id);
+            }
+            block[s] = id;
+        }
+        return ids.size();
+    }
+
+    public boolean isPrefixFree() {
+        for (int s = 0; s < accepts.length; ++s) {
+            if (accepts[s] < 0) {
+                continue;
+            }
+            for (final int target : transitions[s]) {
+                if (target >= 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    public int[] getBounds() {
+        return bounds;
+    }
+
+    public int[] getBoundClasses() {
+        return boundClasses;
+    }
+
+    public int getClassCount() {
+        return classCount;
+    }
+
+    public int getStateCount() {
+        return accepts.length;
+    }
+
+    public int[][] getTransitions() {
+        return transitions;
+    }
+
+    public int[] getAccepts() {
+        return accepts;
+    }
+}
@@ -0,0 +1,100 @@
+package generators.automata;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+public class Nfa {
+    static class Edge {
+        final int[] ranges;
+        final int target;
+
+        Edge(final int[] ranges, final int target) {
+            this.ranges = ranges;
+            this.target = target;
+        }
+    }
+
+    private final List<List<Integer>> epsilons;
+    private final List<List<Edge>> edges;
+    private final List<Integer> accepts;
+    private final List<Integer> owners;
+
+    public Nfa() {
+        this.epsilons = new ArrayList<>();
+        this.edges = new ArrayList<>();
+        this.accepts = new ArrayList<>();
+        this.owners = new ArrayList<>();
+    }
+
+    public int addState() {
+        epsilons.add(new ArrayList<>());
+        edges.add(new ArrayList<>());
+        accepts.add(-1);
+        owners.add(-1);
+        return accepts.size() - 1;
+    }
+
+    public void addEpsilon(final int from, final int to) {
+        epsilons.get(from).add(to);
+    }
+
+    public void addEdge(final int from, final int[] ranges, final int to) {
+        edges.get(from).add(new Edge(ranges, to));
+    }
+
+    public void setAccept(final int state, final int rule) {
+        accepts.set(state, rule);
+    }
+
+    public int size() {
+        return accepts.size();
+    }
+
+    int getAccept(final int state) {
+        return accepts.get(state);
+    }
+
+    int getOwner(final int state) {
+        return owners.get(state);
+    }
+
+    List<Edge> getEdges(final int state) {
+        return edges.get(state);
+    }
+
+    BitSet closure(final BitSet states) {
+        final BitSet res = (BitSet) states.clone();
+        final int[] stack = new int[size()];
+        int top = 0;
+        for (int s = res.nextSetBit(0); s >= 0; s = res.nextSetBit(s + 1)) {
+            stack[top++] = s;
+        }
+        while (top > 0) {
+            final int s = stack[--top];
+            for (final int next : epsilons.get(s)) {
+                if (!res.get(next)) {
+                    res.set(next);
+                    stack[top++] = next;
+                }
+            }
+        }
+        return res;
+    }
+
+    public static Nfa fromRules(final List<Regex> rules) {
+        final Nfa nfa = new Nfa();
+        final int start = nfa.addState();
+        for (int i = 0; i < rules.size(); ++i) {
+            final int begin = nfa.addState();
+            final int end = nfa.addState();
+            nfa.addEpsilon(start, begin);
+            rules.get(i).build(nfa, begin, end);
+            nfa.setAccept(end, i);
+            for (int s = begin; s < nfa.size(); ++s) {
+                nfa.owners.set(s, i);
+            }
+        }
+        return nfa;
+    }
+}
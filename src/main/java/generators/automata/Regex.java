@@ -0,0 +1,175 @@
+package generators.automata;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public abstract class Regex {
+    public final static int MAX_CHAR = Character.MAX_VALUE;
+
+    abstract void build(final Nfa nfa, final int from, final int to);
+
+    public static class CharClass extends Regex {
+        private final int[] ranges;
+
+        public CharClass(final int[] ranges) {
+            this.ranges = ranges;
+        }
+
+        public int[] getRanges() {
+            return ranges;
+        }
+
+        @Override
+        void build(final Nfa nfa, final int from, final int to) {
+            nfa.addEdge(from, ranges, to);
+        }
+    }
+
+    public static class Concat extends Regex {
+        private final List<Regex> parts;
+
+        public Concat(final List<Regex> parts) {
+            this.parts = parts;
+        }
+
+        public List<Regex> getParts() {
+            return parts;
+        }
+
+        @Override
+        void build(final Nfa nfa, final int from, final int to) {
+            int cur = from;
+            for (int i = 0; i < parts.size(); ++i) {
+                final int next = (i + 1 == parts.size()) ? to : nfa.addState();
+                parts.get(i).build(nfa, cur, next);
+                cur = next;
+            }
+            if (parts.isEmpty()) {
+                nfa.addEpsilon(from, to);
+            }
+        }
+    }
+
+    public static class Alternation extends Regex {
+        private final List<Regex> alternatives;
+
+        public Alternation(final List<Regex> alternatives) {
+            this.alternatives = alternatives;
+        }
+
+        public List<Regex> getAlternatives() {
+            return alternatives;
+        }
+
+        @Override
+        void build(final Nfa nfa, final int from, final int to) {
+            for (final Regex alternative : alternatives) {
+                final int begin = nfa.addState();
+                final int end = nfa.addState();
+                nfa.addEpsilon(from, begin);
+                alternative.build(nfa, begin, end);
+                nfa.addEpsilon(end, to);
+            }
+        }
+    }
+
+    public static class Repeat extends Regex {
+        private final Regex body;
+        private final int min;
+        private final int max;
+
+        public Repeat(final Regex body, final int min, final int max) {
+            this.body = body;
+            this.min = min;
+            this.max = max;
+        }
+
+        public Regex getBody() {
+            return body;
+        }
+
+        public int getMin() {
+            return min;
+        }
+
+        public int getMax() {
+            return max;
+        }
+
+        @Override
+        void build(final Nfa nfa, final int from, final int to) {
+            int cur = from;
+            for (int i = 0; i < min; ++i) {
+                final int next = nfa.addState();
+                body.build(nfa, cur, next);
+                cur = next;
+            }
+            if (max < 0) {
+                final int loop = nfa.addState();
+                final int begin = nfa.addState();
+                final int end = nfa.addState();
+                nfa.addEpsilon(cur, loop);
+                nfa.addEpsilon(loop, begin);
+                body.build(nfa, begin, end);
+                nfa.addEpsilon(end, loop);
+                nfa.addEpsilon(loop, to);
+            } else {
+                for (int i = min; i < max; ++i) {
+                    final int next = nfa.addState();
+                    body.build(nfa, cur, next);
+                    nfa.addEpsilon(cur, to);
+                    cur = next;
+                }
+                nfa.addEpsilon(cur, to);
+            }
+        }
+    }
+
+    public static int[] normalize(final List<int[]> ranges) {
+        final List<int[]> sorted = new ArrayList<>(ranges);
+        sorted.sort((a, b) -> Integer.compare(a[0], b[0]));
+        final List<int[]> merged = new ArrayList<>();
+        for (final int[] range : sorted) {
+            if (!merged.isEmpty() && merged.get(merged.size() - 1)[1] + 1 >= range[0]) {
+                final int[] last = merged.get(merged.size() - 1);
+                last[1] = Math.max(last[1], range[1]);
+            } else {
+                merged.add(new int[]{range[0], range[1]});
+            }
+        }
+        final int[] res = new int[merged.size() * 2];
+        for (int i = 0; i < merged.size(); ++i) {
+            res[2 * i] = merged.get(i)[0];
+            res[2 * i + 1] = merged.get(i)[1];
+        }
+        return res;
+    }
+
+    public static int[] complement(final int[] ranges) {
+        final List<int[]> res = new ArrayList<>();
+        int next = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] > next) {
+                res.add(new int[]{next, ranges[i] - 1});
+            }
+            next = ranges[i + 1] + 1;
+        }
+        if (next <= MAX_CHAR) {
+            res.add(new int[]{next, MAX_CHAR});
+        }
+        return normalize(res);
+    }
+
+    public static boolean contains(final int[] ranges, final int c) {
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] <= c && c <= ranges[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static int[] single(final int c) {
+        return new int[]{c, c};
+    }
+}
@@ -0,0 +1,181 @@
+package generators.automata;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+public class RegexAnalysis {
+    public static class Item {
+        private final int[] ranges;
+        private final boolean optional;
+        private final boolean repeated;
+
+        Item(final int[] ranges, final boolean optional, final boolean repeated) {
+            this.ranges = ranges;
+            this.optional = optional;
+            this.repeated = repeated;
+        }
+
+        public int[] getRanges() {
+            return ranges;
+        }
+
+        public boolean isOptional() {
+            return optional;
+        }
+
+        public boolean isRepeated() {
+            return repeated;
+        }
+    }
+
+    private RegexAnalysis() {
+    }
+
+    public static boolean isNullable(final Regex regex) {
+        if (regex instanceof Regex.CharClass) {
+            return false;
+        } else if (regex instanceof Regex.Concat) {
+            return ((Regex.Concat) regex).getParts().stream().allMatch(RegexAnalysis::isNullable);
+        } else if (regex instanceof Regex.Alternation) {
+            return ((Regex.Alternation) regex).getAlternatives().stream().anyMatch(RegexAnalysis::isNullable);
+        } else {
+            final Regex.Repeat repeat = (Regex.Repeat) regex;
+            return repeat.getMin() == 0 || isNullable(repeat.getBody());
+        }
+    }
+
+    public static int[] firstChars(final Regex regex) {
+        final List<int[]> res = new ArrayList<>();
+        collectFirst(regex, res);
+        return Regex.normalize(res);
+    }
+
+    private static void collectFirst(final Regex regex, final List<int[]> res) {
+        if (regex instanceof Regex.CharClass) {
+            final int[] ranges = ((Regex.CharClass) regex).getRanges();
+            for (int i = 0; i < ranges.length; i += 2) {
+                res.add(new int[]{ranges[i], ranges[i + 1]});
+            }
+        } else if (regex instanceof Regex.Concat) {
+            for (final Regex part : ((Regex.Concat) regex).getParts()) {
+                collectFirst(part, res);
+                if (!isNullable(part)) {
+                    return;
+                }
+            }
+        } else if (regex instanceof Regex.Alternation) {
+            for (final Regex alternative : ((Regex.Alternation) regex).getAlternatives()) {
+                collectFirst(alternative, res);
+            }
+        } else {
+            collectFirst(((Regex.Repeat) regex).getBody(), res);
+        }
+    }
+
+    public static List<Item> simpleSequence(final Regex regex) {
+        final List<Regex> parts = regex instanceof Regex.Concat
+                ? ((Regex.Concat) regex).getParts()
+                : Collections.singletonList(regex);
+        final List<Item> items = new ArrayList<>();
+        for (final Regex part : parts) {
+            if (part instanceof Regex.CharClass) {
+                items.add(new Item(((Regex.CharClass) part).getRanges(), false, false));
+            } else if (part instanceof Regex.Repeat && ((Regex.Repeat) part).getBody() instanceof Regex.CharClass) {
+                final Regex.Repeat repeat = (Regex.Repeat) part;
+                final int[] ranges = ((Regex.CharClass) repeat.getBody()).getRanges();
+                if (repeat.getMin() > 1 || (repeat.getMax() >= 0 && repeat.getMax() != 1)) {
+                    return null;
+                }
+                items.add(new Item(ranges, repeat.getMin() == 0, repeat.getMax() < 0));
+            } else {
+                return null;
+            }
+        }
+        for (int i = 0; i < items.size(); ++i) {
+            final Item item = items.get(i);
+            if (!item.optional && !item.repeated) {
+                continue;
+            }
+            for (int j = i + 1; j < items.size(); ++j) {
+                if (intersects(item.ranges, items.get(j).ranges)) {
+                    return null;
+                }
+                if (!items.get(j).optional) {
+                    break;
+                }
+            }
+        }
+        return items;
+    }
+
+    public static boolean intersects(final int[] a, final int[] b) {
+        for (int i = 0; i < a.length; i += 2) {
+            for (int j = 0; j < b.length; j += 2) {
+                if (a[i] <= b[j + 1] && b[j] <= a[i + 1]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public static boolean prefixConflict(final Dfa left, final Dfa right) {
+        final TreeSet<Integer> points = new TreeSet<>();
+        for (final int bound : left.getBounds()) {
+            points.add(bound);
+        }
+        for (final int bound : right.getBounds()) {
+            points.add(bound);
+        }
+        final int[] leftClasses = new int[points.size()];
+        final int[] rightClasses = new int[points.size()];
+        int k = 0;
+        for (final int point : points) {
+            leftClasses[k] = classOf(left, point);
+            rightClasses[k] = classOf(right, point);
+            ++k;
+        }
+        final Set<Long> seen = new HashSet<>();
+        final Deque<Long> queue = new ArrayDeque<>();
+        seen.add(0L);
+        queue.add(0L);
+        while (!queue.isEmpty()) {
+            final long pair = queue.poll();
+            final int l = (int) (pair >>> 32);
+            final int r = (int) pair;
+            if (left.getAccepts()[l] >= 0 || right.getAccepts()[r] >= 0) {
+                return true;
+            }
+            for (int i = 0; i < leftClasses.length; ++i) {
+                final int nextLeft = left.getTransitions()[l][leftClasses[i]];
+                final int nextRight = right.getTransitions()[r][rightClasses[i]];
+                final long next = ((long) nextLeft << 32) | nextRight;
+                if (nextLeft >= 0 && nextRight >= 0 && seen.add(next)) {
+                    queue.add(next);
+                }
+            }
+        }
+        return false;
+    }
+
+    private static int classOf(final Dfa dfa, final int c) {
+        final int[] bounds = dfa.getBounds();
+        int low = 0;
+        int high = bounds.length - 1;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (bounds[mid] <= c) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return dfa.getBoundClasses()[low];
+    }
+}
@@ -0,0 +1,272 @@
+package generators.automata;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class RegexParser {
+    private final static int[] DIGITS = {'0', '9'};
+    private final static int[] WORD = {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'};
+    private final static int[] SPACES = {'\t', '\r', ' ', ' '};
+    private final static int[] LINE_TERMINATORS = {'\n', '\n', '\r', '\r', 0x85, 0x85, 0x2028, 0x2029};
+
+    private final String regex;
+    private int pos;
+
+    private RegexParser(final String regex) {
+        this.regex = regex;
+        this.pos = 0;
+    }
+
+    public static Regex parse(final String regex) throws UnsupportedRegexException {
+        final RegexParser parser = new RegexParser(regex);
+        final Regex res = parser.parseAlternation();
+        if (parser.pos != regex.length()) {
+            throw parser.error("unexpected '" + regex.charAt(parser.pos) + "'");
+        }
+        return res;
+    }
+
+    private UnsupportedRegexException error(final String description) {
+        return new UnsupportedRegexException(description + " at position " + pos + " in \"" + regex + "\"");
+    }
+
+    private boolean hasNext() {
+        return pos < regex.length();
+    }
+
+    private char peek() {
+        return regex.charAt(pos);
+    }
+
+    private char next() throws UnsupportedRegexException {
+        if (!hasNext()) {
+            throw error("unexpected end of pattern");
+        }
+        return regex.charAt(pos++);
+    }
+
+    private void expect(final char c) throws UnsupportedRegexException {
+        if (next() != c) {
+            throw error("expected '" + c + "'");
+        }
+    }
+
+    private Regex parseAlternation() throws UnsupportedRegexException {
+        final List<Regex> alternatives = new ArrayList<>();
+        alternatives.add(parseConcat());
+        while (hasNext() && peek() == '|') {
+            ++pos;
+            alternatives.add(parseConcat());
+        }
+        return alternatives.size() == 1 ? alternatives.get(0) : new Regex.Alternation(alternatives);
+    }
+
+    private Regex parseConcat() throws UnsupportedRegexException {
+        final List<Regex> parts = new ArrayList<>();
+        while (hasNext() && peek() != '|' && peek() != ')') {
+            parts.add(parseRepeat());
+        }
+        return parts.size() == 1 ? parts.get(0) : new Regex.Concat(parts);
+    }
+
+    private Regex parseRepeat() throws UnsupportedRegexException {
+        Regex res = parseAtom();
+        while (hasNext()) {
+            final int min;
+            final int max;
+            switch (peek()) {
+                case '*':
+                    ++pos;
+                    min = 0;
+                    max = -1;
+                    break;
+                case '+':
+                    ++pos;
+                    min = 1;
+                    max = -1;
+                    break;
+                case '?':
+                    ++pos;
+                    min = 0;
+                    max = 1;
+                    break;
+                case '{':
+                    ++pos;
+                    min = parseNumber();
+                    if (hasNext() && peek() == ',') {
+                        ++pos;
+                        max = (hasNext() && peek() == '}') ? -1 : parseNumber();
+                    } else {
+                        max = min;
+                    }
+                    expect('}');
+                    if (max >= 0 && max < min) {
+                        throw error("illegal repetition range");
+                    }
+                    break;
+                default:
+                    return res;
+            }
+            if (hasNext() && (peek() == '?' || peek() == '+')) {
+                throw error("lazy and possessive quantifiers are not supported");
+            }
+            res = new Regex.Repeat(res, min, max);
+        }
+        return res;
+    }
+
+    private int parseNumber() throws UnsupportedRegexException {
+        final int begin = pos;
+        while (hasNext() && Character.isDigit(peek())) {
+            ++pos;
+        }
+        if (begin == pos) {
+            throw error("expected number");
+        }
+        return Integer.parseInt(regex.substring(begin, pos));
+    }
+
+    private Regex parseAtom() throws UnsupportedRegexException {
+        final char c = next();
+        switch (c) {
+            case '(':
+                if (hasNext() && peek() == '?') {
+                    ++pos;
+                    if (next() != ':') {
+                        throw error("only non-capturing groups are supported");
+                    }
+                }
+                final Regex group = parseAlternation();
+                expect(')');
+                return group;
+            case '[':
+                return new Regex.CharClass(parseClass());
+            case '.':
+                return new Regex.CharClass(Regex.complement(LINE_TERMINATORS));
+            case '\\':
+                return new Regex.CharClass(parseEscape(false));
+            case '^':
+            case '$':
+                throw error("anchors are not supported");
+            case '*':
+            case '+':
+            case '?':
+            case '{':
+                throw error("dangling meta character '" + c + "'");
+            default:
+                return new Regex.CharClass(Regex.single(c));
+        }
+    }
+
+    private int[] parseClass() throws UnsupportedRegexException {
+        boolean negate = false;
+        if (hasNext() && peek() == '^') {
+            ++pos;
+            negate = true;
+        }
+        final List<int[]> ranges = new ArrayList<>();
+        boolean first = true;
+        while (first || peek() != ']') {
+            first = false;
+            final char c = next();
+            if (c == '[' || (c == '&' && hasNext() && peek() == '&')) {
+                throw error("nested classes and intersections are not supported");
+            }
+            final int[] low = (c == '\\') ? parseEscape(true) : Regex.single(c);
+            if (low.length == 2 && low[0] == low[1] && hasNext() && peek() == '-'
+                    && pos + 1 < regex.length() && regex.charAt(pos + 1) != ']') {
+                ++pos;
+                final char d = next();
+                final int[] high = (d == '\\') ? parseEscape(true) : Regex.single(d);
+                if (high.length != 2 || high[0] != high[1] || high[0] < low[0]) {
+                    throw error("illegal character range");
+                }
+                ranges.add(new int[]{low[0], high[0]});
+            } else {
+                for (int i = 0; i < low.length; i += 2) {
+                    ranges.add(new int[]{low[i], low[i + 1]});
+                }
+            }
+            if (!hasNext()) {
+                throw error("unclosed character class");
+            }
+        }
+        ++pos;
+        final int[] res = Regex.normalize(ranges);
+        return negate ? Regex.complement(res) : res;
+    }
+
+    private int[] parseEscape(final boolean inClass) throws UnsupportedRegexException {
+        final char c = next();
+        switch (c) {
+            case 't':
+                return Regex.single('\t');
+            case 'n':
+                return Regex.single('\n');
+            case 'r':
+                return Regex.single('\r');
+            case 'f':
+                return Regex.single('\f');
+            case 'a':
+                return Regex.single(7);
+            case 'e':
+                return Regex.single(27);
+            case '0':
+                return Regex.single(parseOctal());
+            case 'x':
+                return Regex.single(parseHex(2));
+            case 'u':
+                return Regex.single(parseHex(4));
+            case 'c':
+                return Regex.single(next() ^ 64);
+            case 'd':
+                return DIGITS;
+            case 'D':
+                return Regex.complement(DIGITS);
+            case 's':
+                return SPACES;
+            case 'S':
+                return Regex.complement(SPACES);
+            case 'w':
+                return WORD;
+            case 'W':
+                return Regex.complement(WORD);
+            default:
+                if (Character.isLetterOrDigit(c)) {
+                    throw error("escape '\\" + c + "' is not supported" + (inClass ? " in character class" : ""));
+                }
+                return Regex.single(c);
+        }
+    }
+
+    private int parseOctal() throws UnsupportedRegexException {
+        int res = 0;
+        int digits = 0;
+        while (hasNext() && digits < 3 && peek() >= '0' && peek() <= '7') {
+            final int next = res * 8 + (peek() - '0');
+            if (next > 0377) {
+                break;
+            }
+            res = next;
+            ++pos;
+            ++digits;
+        }
+        if (digits == 0) {
+            throw error("illegal octal escape");
+        }
+        return res;
+    }
+
+    private int parseHex(final int digits) throws UnsupportedRegexException {
+        if (pos + digits > regex.length()) {
+            throw error("illegal hexadecimal escape");
+        }
+        try {
+            final int res = Integer.parseInt(regex.substring(pos, pos + digits), 16);
+            pos += digits;
+            return res;
+        } catch (NumberFormatException e) {
+            throw error("illegal hexadecimal escape");
+        }
+    }
+}
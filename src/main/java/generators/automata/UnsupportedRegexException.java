@@ -0,0 +1,7 @@
+package generators.automata;
+
+public class UnsupportedRegexException extends Exception {
+    public UnsupportedRegexException(final String description) {
+        super(description);
+    }
+}
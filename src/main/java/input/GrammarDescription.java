@@ -12,12 +12,18 @@ public class GrammarDescription {
     private ParserRule start;
     private List<ParserRule> parserRules;
 
-    private Map<String, Set<String>> first;
-    private Map<String, Set<String>> follow;
+    private List<String> terminals;
+    private Map<String, Integer> terminalIds;
+    private Map<String, Integer> ruleIds;
+    private boolean[] nullable;
+    private BitSet[] first;
+    private BitSet[] follow;
+    private List<List<Set<String>>> markers;
+    private boolean[] ruleLL1;
 
-    private final static String EPS = "EPS";
     public final static String END = "_END";
 
+    private boolean ll1;
     private Exception error;
 
     public GrammarDescription(final String header, final List<TokenRule> tokenRules, final List<String> skipsNames,
@@ -57,15 +63,12 @@ public class GrammarDescription {
             }
             this.parserRules = parserRules;
 
-            this.first = new HashMap<>();
+            indexSymbols();
+            countNullable();
             countFirst();
-
-            this.follow = new HashMap<>();
             countFollow();
-
-            if (!checkLL1()) {
-                throw new Exception("Not LL1 grammar");
-            }
+            countPredict();
+            this.ll1 = checkLL1();
             this.error = null;
         } catch (Exception e) {
             this.error = e;
@@ -96,120 +99,204 @@ public class GrammarDescription {
                 });
     }
 
-    private Set<String> getFirstForAtoms(final List<RuleAtom> atoms) {
-        if (atoms.isEmpty()) {
-            return Collections.singleton(EPS);
+    private void indexSymbols() {
+        this.terminals = new ArrayList<>();
+        this.terminalIds = new HashMap<>();
+        for (final TokenRule rule : tokenRules) {
+            terminalIds.put(rule.getName(), terminals.size());
+            terminals.add(rule.getName());
+        }
+        terminalIds.put(END, terminals.size());
+        terminals.add(END);
+        this.ruleIds = new HashMap<>();
+        for (int i = 0; i < parserRules.size(); ++i) {
+            ruleIds.put(parserRules.get(i).getName(), i);
+        }
+    }
+
+    private static List<RuleAtom> getAtoms(final RuleAlternative alternative) {
+        if (alternative instanceof EpsilonAlternative) {
+            return Collections.emptyList();
+        }
+        return ((AtomAlternative) alternative).getAtoms();
+    }
+
+    private void countNullable() {
+        final int size = parserRules.size();
+        this.nullable = new boolean[size];
+        final List<List<int[]>> users = new ArrayList<>(size);
+        for (int i = 0; i < size; ++i) {
+            users.add(new ArrayList<>());
+        }
+        final List<int[]> pending = new ArrayList<>();
+        final Deque<Integer> queue = new ArrayDeque<>();
+        for (int r = 0; r < size; ++r) {
+            for (final RuleAlternative alternative : parserRules.get(r).getAlternatives()) {
+                final List<RuleAtom> atoms = getAtoms(alternative);
+                if (atoms.stream().anyMatch(RuleAtom::isTerminal)) {
+                    continue;
+                }
+                final int[] counter = {r, atoms.size()};
+                if (atoms.isEmpty()) {
+                    if (!nullable[r]) {
+                        nullable[r] = true;
+                        queue.add(r);
+                    }
+                    continue;
+                }
+                pending.add(counter);
+                for (final RuleAtom atom : atoms) {
+                    users.get(ruleIds.get(atom.getName())).add(counter);
+                }
+            }
+        }
+        while (!queue.isEmpty()) {
+            for (final int[] counter : users.get(queue.poll())) {
+                if (--counter[1] == 0 && !nullable[counter[0]]) {
+                    nullable[counter[0]] = true;
+                    queue.add(counter[0]);
+                }
+            }
+        }
+    }
+
+    private void propagate(final BitSet[] sets, final List<Set<Integer>> edges) {
+        final Deque<Integer> queue = new ArrayDeque<>();
+        final boolean[] queued = new boolean[sets.length];
+        for (int i = 0; i < sets.length; ++i) {
+            queue.add(i);
+            queued[i] = true;
         }
-        final RuleAtom begin = atoms.get(0);
-        if (begin.isTerminal()) {
-            return Collections.singleton(begin.getName());
-        } else {
-            first.putIfAbsent(begin.getName(), new HashSet<>());
-            final Set<String> res = first.get(begin.getName());
-            if (res.contains(EPS)) {
-                res.remove(EPS);
-                res.addAll(getFirstForAtoms(atoms.subList(1, atoms.size())));
+        while (!queue.isEmpty()) {
+            final int from = queue.poll();
+            queued[from] = false;
+            for (final int to : edges.get(from)) {
+                final int prev = sets[to].cardinality();
+                sets[to].or(sets[from]);
+                if (sets[to].cardinality() != prev && !queued[to]) {
+                    queue.add(to);
+                    queued[to] = true;
+                }
             }
-            return res;
         }
     }
 
+    private List<Set<Integer>> emptyEdges() {
+        final List<Set<Integer>> edges = new ArrayList<>(parserRules.size());
+        for (int i = 0; i < parserRules.size(); ++i) {
+            edges.add(new HashSet<>());
+        }
+        return edges;
+    }
+
     private void countFirst() {
-        boolean changed = true;
-        while (changed) {
-            changed = false;
-            for (final ParserRule rule : parserRules) {
-                for (final RuleAlternative alternative : rule.getAlternatives()) {
-                    first.putIfAbsent(rule.getName(), new HashSet<>());
-                    final Set<String> prevSet = first.get(rule.getName());
-                    final int prevSize = prevSet.size();
-                    prevSet.addAll(getFirst(alternative));
-                    if (prevSet.size() != prevSize) {
-                        changed = true;
+        this.first = new BitSet[parserRules.size()];
+        final List<Set<Integer>> edges = emptyEdges();
+        for (int r = 0; r < parserRules.size(); ++r) {
+            first[r] = new BitSet(terminals.size());
+            for (final RuleAlternative alternative : parserRules.get(r).getAlternatives()) {
+                for (final RuleAtom atom : getAtoms(alternative)) {
+                    if (atom.isTerminal()) {
+                        first[r].set(terminalIds.get(atom.getName()));
+                        break;
+                    }
+                    final int id = ruleIds.get(atom.getName());
+                    edges.get(id).add(r);
+                    if (!nullable[id]) {
+                        break;
                     }
                 }
             }
         }
+        propagate(first, edges);
+    }
+
+    private boolean firstOfAtoms(final List<RuleAtom> atoms, final int from, final BitSet res) {
+        for (int i = from; i < atoms.size(); ++i) {
+            final RuleAtom atom = atoms.get(i);
+            if (atom.isTerminal()) {
+                res.set(terminalIds.get(atom.getName()));
+                return false;
+            }
+            final int id = ruleIds.get(atom.getName());
+            res.or(first[id]);
+            if (!nullable[id]) {
+                return false;
+            }
+        }
+        return true;
     }
 
     private void countFollow() {
-        follow.put(start.getName(), new HashSet<>());
-        follow.get(start.getName()).add(END);
-        boolean changed = true;
-        while (changed) {
-            changed = false;
-            for (final ParserRule rule : parserRules) {
-                for (final RuleAlternative alternative : rule.getAlternatives()) {
-                    if (alternative instanceof EpsilonAlternative) {
+        this.follow = new BitSet[parserRules.size()];
+        for (int r = 0; r < parserRules.size(); ++r) {
+            follow[r] = new BitSet(terminals.size());
+        }
+        follow[ruleIds.get(start.getName())].set(terminalIds.get(END));
+        final List<Set<Integer>> edges = emptyEdges();
+        for (int r = 0; r < parserRules.size(); ++r) {
+            for (final RuleAlternative alternative : parserRules.get(r).getAlternatives()) {
+                final List<RuleAtom> atoms = getAtoms(alternative);
+                for (int i = 0; i < atoms.size(); ++i) {
+                    if (atoms.get(i).isTerminal()) {
                         continue;
                     }
-                    final List<RuleAtom> atoms = ((AtomAlternative) alternative).getAtoms();
-                    for (int i = 0; i < atoms.size(); ++i) {
-                        if (atoms.get(i).isTerminal()) {
-                            continue;
-                        }
-                        final Set<String> tmp = getFirstForAtoms(atoms.subList(i + 1, atoms.size()));
-                        boolean hadEps = tmp.contains(EPS);
-                        follow.putIfAbsent(atoms.get(i).getName(), new HashSet<>());
-                        final Set<String> prevSet = follow.get(atoms.get(i).getName());
-                        int prevSize = prevSet.size();
-                        prevSet.addAll(tmp);
-                        prevSet.remove(EPS);
-                        if (hadEps) {
-                            follow.putIfAbsent(rule.getName(), new HashSet<>());
-                            final Set<String> tmp2 = follow.get(rule.getName());
-                            prevSet.addAll(tmp2);
-                        }
-                        if (prevSet.size() != prevSize) {
-                            changed = true;
-                        }
+                    final int id = ruleIds.get(atoms.get(i).getName());
+                    if (firstOfAtoms(atoms, i + 1, follow[id])) {
+                        edges.get(r).add(id);
                     }
                 }
             }
         }
+        propagate(follow, edges);
     }
 
-    private boolean checkRule(final ParserRule rule) {
-        for (int i = 0; i < rule.getAlternatives().size(); ++i) {
-            for (int j = 0; j < rule.getAlternatives().size(); ++j) {
-                if (i == j) {
-                    continue;
-                }
-                final Set<String> firstA = getFirst(rule.getAlternatives().get(i));
-                final Set<String> firstB = getFirst(rule.getAlternatives().get(j));
-                boolean intersect = firstB.stream().anyMatch(firstA::contains);
-                if (intersect) {
-                    return false;
-                }
-                if (firstA.contains(EPS)) {
-                    intersect = follow.get(rule.getName()).stream().anyMatch(firstA::contains);
-                    if (intersect) {
-                        return false;
-                    }
+    private void countPredict() {
+        this.markers = new ArrayList<>(parserRules.size());
+        this.ruleLL1 = new boolean[parserRules.size()];
+        for (int r = 0; r < parserRules.size(); ++r) {
+            final List<RuleAlternative> alternatives = parserRules.get(r).getAlternatives();
+            final List<Set<String>> ruleMarkers = new ArrayList<>(alternatives.size());
+            final BitSet seen = new BitSet(terminals.size());
+            boolean seenNullable = false;
+            ruleLL1[r] = true;
+            for (int i = 0; i < alternatives.size(); ++i) {
+                final BitSet set = new BitSet(terminals.size());
+                final boolean altNullable = firstOfAtoms(getAtoms(alternatives.get(i)), 0, set);
+                if (altNullable) {
+                    set.or(follow[r]);
+                    ruleLL1[r] &= !seenNullable;
+                    seenNullable = true;
                 }
+                ruleLL1[r] &= !seen.intersects(set);
+                seen.or(set);
+                final Set<String> names = new LinkedHashSet<>();
+                set.stream().forEach(id -> names.add(terminals.get(id)));
+                ruleMarkers.add(Collections.unmodifiableSet(names));
             }
+            markers.add(ruleMarkers);
         }
-        return true;
     }
 
     private boolean checkLL1() {
-        return parserRules.stream().allMatch(this::checkRule);
+        for (final boolean ok : ruleLL1) {
+            if (!ok) {
+                return false;
+            }
+        }
+        return true;
     }
 
-    private Set<String> getFirst(final RuleAlternative alternative) {
-        if (alternative instanceof EpsilonAlternative) {
-            return Collections.singleton(EPS);
-        }
-        return getFirstForAtoms(((AtomAlternative) alternative).getAtoms());
+    public boolean isLL1() {
+        return ll1;
+    }
+
+    public boolean isLL1(final ParserRule rule) {
+        return ruleLL1[ruleIds.get(rule.getName())];
     }
 
     public Set<String> getMarkers(final ParserRule rule, int altInd) {
-        final Set<String> res = new HashSet<>(getFirst(rule.getAlternatives().get(altInd)));
-        if (res.contains(EPS)) {
-            res.addAll(follow.get(rule.getName()));
-        }
-        res.remove(EPS);
-        return res;
+        return markers.get(ruleIds.get(rule.getName())).get(altInd);
     }
 
     public Exception getError() {
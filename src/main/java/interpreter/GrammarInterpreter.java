@@ -0,0 +1,275 @@
+package interpreter;
+
+import generators.StringLiterals;
+import generators.automata.Dfa;
+import generators.automata.Regex;
+import generators.automata.RegexAnalysis;
+import generators.automata.RegexParser;
+import generators.automata.UnsupportedRegexException;
+import input.AtomAlternative;
+import input.GrammarDescription;
+import input.ParserRule;
+import input.RuleAlternative;
+import input.RuleAtom;
+import input.TokenRule;
+import runtime.CharDispatch;
+import runtime.DfaTable;
+import runtime.LexingException;
+import runtime.ParsingException;
+import runtime.TokenCursor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+public class GrammarInterpreter {
+    private final static int INITIAL_DEPTH = 64;
+
+    private final List<String> tokenNames;
+    private final List<String> ruleNames;
+    private final int end;
+    private final int[] ruleTypes;
+    private final DfaTable[] dfas;
+    private final Pattern[] patterns;
+    private final CharDispatch skips;
+    private final CharDispatch tokens;
+    private final int start;
+    private final int[][][] alternatives;
+    private final char[] predict;
+    private final String[] expected;
+
+    public GrammarInterpreter(final GrammarDescription grammar) throws Exception {
+        if (grammar.getError() != null) {
+            throw grammar.getError();
+        }
+        if (!grammar.isLL1()) {
+            throw new Exception("Not LL1 grammar");
+        }
+        final List<TokenRule> rules = grammar.getTokenRules();
+        final List<String> names = rules.stream().map(TokenRule::getName).collect(Collectors.toList());
+        final Set<String> skipNames = grammar.getSkips().stream().map(TokenRule::getName).collect(Collectors.toSet());
+        this.tokenNames = new ArrayList<>();
+        for (final String name : names) {
+            if (!skipNames.contains(name)) {
+                tokenNames.add(name);
+            }
+        }
+        tokenNames.add(GrammarDescription.END);
+        this.end = tokenNames.size() - 1;
+
+        this.ruleTypes = new int[rules.size()];
+        this.dfas = new DfaTable[rules.size()];
+        this.patterns = new Pattern[rules.size()];
+        final String[] firsts = new String[rules.size()];
+        final StringBuilder tokenOrder = new StringBuilder();
+        for (int i = 0; i < rules.size(); ++i) {
+            ruleTypes[i] = tokenNames.indexOf(names.get(i));
+            if (ruleTypes[i] >= 0) {
+                tokenOrder.append((char) i);
+            }
+            final String regex = StringLiterals.unquote(rules.get(i).getRegex());
+            Regex parsed;
+            try {
+                parsed = RegexParser.parse(regex);
+            } catch (UnsupportedRegexException e) {
+                parsed = null;
+            }
+            if (parsed != null) {
+                final Dfa dfa = Dfa.build(Collections.singletonList(parsed));
+                if ((dfa.isPrefixFree() || RegexAnalysis.simpleSequence(parsed) != null)
+                        && dfa.getStateCount() < Character.MAX_VALUE) {
+                    dfas[i] = toTable(dfa);
+                }
+            }
+            if (dfas[i] == null) {
+                patterns[i] = Pattern.compile(regex);
+            }
+            firsts[i] = toRanges(parsed == null || RegexAnalysis.isNullable(parsed)
+                    ? new int[]{0, Regex.MAX_CHAR}
+                    : RegexAnalysis.firstChars(parsed));
+        }
+        final StringBuilder skipOrder = new StringBuilder();
+        for (final TokenRule skip : grammar.getSkips()) {
+            skipOrder.append((char) names.indexOf(skip.getName()));
+        }
+        this.skips = dispatch(skipOrder.toString(), firsts);
+        this.tokens = dispatch(tokenOrder.toString(), firsts);
+
+        final List<ParserRule> parserRules = grammar.getParserRules();
+        this.ruleNames = parserRules.stream().map(ParserRule::getName).collect(Collectors.toList());
+        this.start = ruleNames.indexOf(grammar.getStart().getName());
+        this.alternatives = new int[parserRules.size()][][];
+        this.predict = new char[parserRules.size() * tokenNames.size()];
+        this.expected = new String[parserRules.size()];
+        final Map<String, Integer> tokenIds = new HashMap<>();
+        for (int i = 0; i < tokenNames.size(); ++i) {
+            tokenIds.put(tokenNames.get(i), i);
+        }
+        for (int r = 0; r < parserRules.size(); ++r) {
+            final ParserRule rule = parserRules.get(r);
+            alternatives[r] = new int[rule.getAlternatives().size()][];
+            final List<String> wanted = new ArrayList<>();
+            for (int a = 0; a < rule.getAlternatives().size(); ++a) {
+                final RuleAlternative alternative = rule.getAlternatives().get(a);
+                final List<RuleAtom> atoms = alternative instanceof AtomAlternative
+                        ? ((AtomAlternative) alternative).getAtoms()
+                        : Collections.emptyList();
+                final int[] symbols = new int[atoms.size()];
+                for (int i = 0; i < atoms.size(); ++i) {
+                    final RuleAtom atom = atoms.get(i);
+                    if (atom.isTerminal()) {
+                        if (!tokenIds.containsKey(atom.getName())) {
+                            throw new Exception("Ignored token " + atom.getName() + " is used in rule " + rule.getName());
+                        }
+                        symbols[i] = tokenIds.get(atom.getName());
+                    } else {
+                        symbols[i] = -1 - ruleNames.indexOf(atom.getName());
+                    }
+                }
+                alternatives[r][a] = symbols;
+                for (final String marker : grammar.getMarkers(rule, a)) {
+                    predict[r * tokenNames.size() + tokenIds.get(marker)] = (char) (a + 1);
+                    wanted.add(marker);
+                }
+            }
+            expected[r] = String.join(", ", wanted);
+        }
+    }
+
+    private static String toRanges(final int[] ranges) {
+        final StringBuilder res = new StringBuilder();
+        for (final int c : ranges) {
+            res.append((char) c);
+        }
+        return res.toString();
+    }
+
+    private static CharDispatch dispatch(final String order, final String[] firsts) {
+        final String[] ranges = new String[order.length()];
+        for (int i = 0; i < order.length(); ++i) {
+            ranges[i] = firsts[order.charAt(i)];
+        }
+        return new CharDispatch(order, ranges);
+    }
+
+    private static DfaTable toTable(final Dfa dfa) {
+        final StringBuilder transitions = new StringBuilder();
+        for (int s = 0; s < dfa.getStateCount(); ++s) {
+            for (int c = 0; c < dfa.getClassCount(); ++c) {
+                transitions.append((char) (dfa.getTransitions()[s][c] + 1));
+            }
+        }
+        final StringBuilder accepts = new StringBuilder();
+        for (int s = 0; s < dfa.getStateCount(); ++s) {
+            accepts.append((char) (dfa.getAccepts()[s] + 1));
+        }
+        return new DfaTable(toRanges(dfa.getBounds()), toRanges(dfa.getBoundClasses()), dfa.getClassCount(),
+                transitions.toString(), accepts.toString());
+    }
+
+    DfaTable getDfa(final int rule) {
+        return dfas[rule];
+    }
+
+    Pattern getPattern(final int rule) {
+        return patterns[rule];
+    }
+
+    CharDispatch getSkips() {
+        return skips;
+    }
+
+    CharDispatch getTokens() {
+        return tokens;
+    }
+
+    int getRuleType(final int rule) {
+        return ruleTypes[rule];
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    public String getTokenName(final int type) {
+        return tokenNames.get(type);
+    }
+
+    public String getRuleName(final int rule) {
+        return ruleNames.get(rule);
+    }
+
+    public List<String> getTokenNames() {
+        return Collections.unmodifiableList(tokenNames);
+    }
+
+    public List<String> getRuleNames() {
+        return Collections.unmodifiableList(ruleNames);
+    }
+
+    public InterpretedLexer lexer(final CharSequence input) {
+        return new InterpretedLexer(this, input);
+    }
+
+    public void parse(final CharSequence input, final ParseListener listener) throws ParsingException, LexingException {
+        parse(lexer(input), listener);
+    }
+
+    public void parse(final TokenCursor lexer, final ParseListener listener) throws ParsingException, LexingException {
+        int[] rules = new int[INITIAL_DEPTH];
+        int[] symbols = new int[INITIAL_DEPTH];
+        int[][] frames = new int[INITIAL_DEPTH][];
+        int depth = 0;
+        int type = lexer.advance();
+        int alternative = choose(start, type, lexer);
+        listener.enterRule(start, alternative);
+        rules[0] = start;
+        frames[0] = alternatives[start][alternative];
+        symbols[0] = 0;
+        while (depth >= 0) {
+            final int[] frame = frames[depth];
+            if (symbols[depth] == frame.length) {
+                listener.exitRule(rules[depth]);
+                --depth;
+                continue;
+            }
+            final int symbol = frame[symbols[depth]++];
+            if (symbol >= 0) {
+                if (type != symbol) {
+                    throw LexingException.unexpected(lexer, tokenNames.get(symbol), tokenNames.get(type));
+                }
+                listener.token(type, lexer);
+                type = lexer.advance();
+                continue;
+            }
+            final int rule = -1 - symbol;
+            alternative = choose(rule, type, lexer);
+            listener.enterRule(rule, alternative);
+            if (++depth == rules.length) {
+                rules = Arrays.copyOf(rules, depth * 2);
+                symbols = Arrays.copyOf(symbols, depth * 2);
+                frames = Arrays.copyOf(frames, depth * 2);
+            }
+            rules[depth] = rule;
+            frames[depth] = alternatives[rule][alternative];
+            symbols[depth] = 0;
+        }
+        if (type != end) {
+            throw ParsingException.trailing(lexer, tokenNames.get(type));
+        }
+    }
+
+    private int choose(final int rule, final int type, final TokenCursor lexer) throws ParsingException {
+        final int alternative = predict[rule * tokenNames.size() + type] - 1;
+        if (alternative < 0) {
+            throw ParsingException.unexpected(lexer, expected[rule], tokenNames.get(type));
+        }
+        return alternative;
+    }
+}
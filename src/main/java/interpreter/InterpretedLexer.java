@@ -0,0 +1,108 @@
+package interpreter;
+
+import runtime.CharDispatch;
+import runtime.DfaTable;
+import runtime.LexingException;
+import runtime.LineIndex;
+import runtime.TextInput;
+import runtime.TokenCursor;
+import runtime.TokenData;
+
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class InterpretedLexer implements TokenCursor {
+    private final GrammarInterpreter grammar;
+    private final TextInput input;
+    private final Matcher matcher;
+    private int pos;
+    private int type;
+    private int start;
+    private int end;
+
+    InterpretedLexer(final GrammarInterpreter grammar, final CharSequence input) {
+        this.grammar = grammar;
+        this.input = new TextInput(input);
+        this.matcher = Pattern.compile("").matcher(input);
+        this.pos = 0;
+    }
+
+    private int match(final int rule, final int from) throws IOException {
+        final DfaTable dfa = grammar.getDfa(rule);
+        if (dfa != null) {
+            return dfa.match(input, from);
+        }
+        matcher.usePattern(grammar.getPattern(rule));
+        matcher.region(from, input.length());
+        return matcher.lookingAt() ? matcher.end() : -1;
+    }
+
+    private int nextToken() throws IOException, LexingException {
+        final CharDispatch skips = grammar.getSkips();
+        skip:
+        while (pos < input.length()) {
+            for (final char rule : skips.candidates(input.charAt(pos))) {
+                final int matched = match(rule, pos);
+                if (matched > pos) {
+                    pos = matched;
+                    continue skip;
+                }
+            }
+            break;
+        }
+        start = pos;
+        end = pos;
+        if (pos == input.length()) {
+            return grammar.getEnd();
+        }
+        for (final char rule : grammar.getTokens().candidates(input.charAt(pos))) {
+            final int matched = match(rule, pos);
+            if (matched >= 0) {
+                pos = matched;
+                end = pos;
+                return grammar.getRuleType(rule);
+            }
+        }
+        throw LexingException.unmatched(input, pos);
+    }
+
+    @Override
+    public int advance() throws LexingException {
+        try {
+            type = nextToken();
+            return type;
+        } catch (IOException e) {
+            throw new LexingException(e);
+        }
+    }
+
+    @Override
+    public int getTypeId() {
+        return type;
+    }
+
+    @Override
+    public long getStart() {
+        return start;
+    }
+
+    @Override
+    public long getEnd() {
+        return end;
+    }
+
+    public CharSequence getText() {
+        return input.subSequence(start, end);
+    }
+
+    @Override
+    public LineIndex getLines() {
+        return input.getLines();
+    }
+
+    @Override
+    public TokenData getData() {
+        return new TokenData(grammar.getTokenName(type), input, start, end);
+    }
+}
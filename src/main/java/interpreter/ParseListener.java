@@ -0,0 +1,14 @@
+package interpreter;
+
+import runtime.TokenCursor;
+
+public interface ParseListener {
+    default void enterRule(final int rule, final int alternative) {
+    }
+
+    default void token(final int type, final TokenCursor cursor) {
+    }
+
+    default void exitRule(final int rule) {
+    }
+}
@@ -0,0 +1,45 @@
+package runtime;
+
+public class ArrayInput extends CharInput {
+    private final char[] chars;
+    private final int from;
+    private final int to;
+
+    public ArrayInput(final char[] chars) {
+        this(chars, 0, chars.length);
+    }
+
+    public ArrayInput(final char[] chars, final int from, final int to) {
+        if (from < 0 || from > to || to > chars.length) {
+            throw new IndexOutOfBoundsException("Invalid range: [" + from + ", " + to + ")");
+        }
+        this.chars = chars;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    public boolean fill() {
+        return false;
+    }
+
+    @Override
+    public int length() {
+        return to - from;
+    }
+
+    @Override
+    public char charAt(final int index) {
+        return chars[from + index];
+    }
+
+    @Override
+    public CharSequence subSequence(final int start, final int end) {
+        return new String(chars, from + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, from, to - from);
+    }
+}
@@ -0,0 +1,120 @@
+package runtime;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
+
+public class BatchParser<I, R> {
+    public interface Worker<I, R> {
+        R parse(I input) throws Exception;
+    }
+
+    public static class Result<I, R> {
+        private final int index;
+        private final I input;
+        private final R value;
+        private final Exception error;
+
+        Result(final int index, final I input, final R value, final Exception error) {
+            this.index = index;
+            this.input = input;
+            this.value = value;
+            this.error = error;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public I getInput() {
+            return input;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        public R getValue() {
+            return value;
+        }
+
+        public Exception getError() {
+            return error;
+        }
+    }
+
+    private final static int TASKS_PER_THREAD = 4;
+
+    private final Supplier<Worker<I, R>> factory;
+    private final ForkJoinPool pool;
+
+    public BatchParser(final Supplier<Worker<I, R>> factory) {
+        this(factory, ForkJoinPool.commonPool());
+    }
+
+    public BatchParser(final Supplier<Worker<I, R>> factory, final ForkJoinPool pool) {
+        this.factory = factory;
+        this.pool = pool;
+    }
+
+    private Result<I, R> run(final Map<Thread, Worker<I, R>> workers, final int index, final I input) {
+        final Worker<I, R> worker = workers.computeIfAbsent(Thread.currentThread(), thread -> factory.get());
+        try {
+            return new Result<>(index, input, worker.parse(input), null);
+        } catch (Exception e) {
+            return new Result<>(index, input, null, e);
+        }
+    }
+
+    public Iterator<Result<I, R>> parse(final Iterable<? extends I> inputs) {
+        final Iterator<? extends I> source = inputs.iterator();
+        final int window = pool.getParallelism() * TASKS_PER_THREAD;
+        final Map<Thread, Worker<I, R>> workers = new ConcurrentHashMap<>();
+        return new Iterator<Result<I, R>>() {
+            private final ArrayDeque<ForkJoinTask<Result<I, R>>> pending = new ArrayDeque<>();
+            private int submitted = 0;
+
+            private void fill() {
+                while (pending.size() < window && source.hasNext()) {
+                    final int index = submitted++;
+                    final I input = source.next();
+                    pending.add(pool.submit(() -> run(workers, index, input)));
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                fill();
+                if (pending.isEmpty()) {
+                    workers.clear();
+                    return false;
+                }
+                return true;
+            }
+
+            @Override
+            public Result<I, R> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final Result<I, R> result = pending.poll().join();
+                fill();
+                return result;
+            }
+        };
+    }
+
+    public List<Result<I, R>> parseAll(final Collection<? extends I> inputs) {
+        final List<Result<I, R>> results = new ArrayList<>(inputs.size());
+        parse(inputs).forEachRemaining(results::add);
+        return results;
+    }
+}
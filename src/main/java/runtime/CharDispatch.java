@@ -0,0 +1,38 @@
+package runtime;
+
+public class CharDispatch {
+    private final static int ASCII = 128;
+
+    private final char[][] ascii;
+    private final char[] other;
+
+    public CharDispatch(final String rules, final String[] firsts) {
+        this.ascii = new char[ASCII][];
+        final StringBuilder[] candidates = new StringBuilder[ASCII];
+        for (int c = 0; c < ASCII; ++c) {
+            candidates[c] = new StringBuilder();
+        }
+        final StringBuilder rest = new StringBuilder();
+        for (int i = 0; i < rules.length(); ++i) {
+            final String ranges = firsts[i];
+            boolean nonAscii = false;
+            for (int j = 0; j < ranges.length(); j += 2) {
+                for (int c = ranges.charAt(j); c <= ranges.charAt(j + 1) && c < ASCII; ++c) {
+                    candidates[c].append(rules.charAt(i));
+                }
+                nonAscii |= ranges.charAt(j + 1) >= ASCII;
+            }
+            if (nonAscii) {
+                rest.append(rules.charAt(i));
+            }
+        }
+        for (int c = 0; c < ASCII; ++c) {
+            ascii[c] = candidates[c].toString().toCharArray();
+        }
+        this.other = rest.toString().toCharArray();
+    }
+
+    public char[] candidates(final char c) {
+        return c < ASCII ? ascii[c] : other;
+    }
+}
@@ -0,0 +1,39 @@
+package runtime;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+public abstract class CharInput implements CharSequence, Closeable {
+    protected long offset;
+    private LineIndex lines;
+
+    protected CharInput() {
+        this.offset = 0;
+        this.lines = null;
+    }
+
+    public abstract boolean fill() throws IOException;
+
+    public int release(final int pos) throws IOException {
+        return pos;
+    }
+
+    public boolean isStable() {
+        return false;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public LineIndex getLines() {
+        if (lines == null) {
+            lines = new LineIndex(this);
+        }
+        return lines;
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+}
@@ -0,0 +1,70 @@
+package runtime;
+
+import java.io.IOException;
+
+public class DfaTable {
+    private final static int ASCII = 128;
+
+    private final char[] bounds;
+    private final char[] boundClasses;
+    private final char[] asciiClasses;
+    private final int classCount;
+    private final char[] transitions;
+    private final char[] accepts;
+
+    public DfaTable(final String bounds, final String boundClasses, final int classCount,
+                    final String transitions, final String accepts) {
+        this.bounds = bounds.toCharArray();
+        this.boundClasses = boundClasses.toCharArray();
+        this.classCount = classCount;
+        this.transitions = transitions.toCharArray();
+        this.accepts = accepts.toCharArray();
+        this.asciiClasses = new char[ASCII];
+        for (char c = 0; c < ASCII; ++c) {
+            asciiClasses[c] = (char) searchClass(c);
+        }
+    }
+
+    private int searchClass(final char c) {
+        int low = 0;
+        int high = bounds.length - 1;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (bounds[mid] <= c) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return boundClasses[low];
+    }
+
+    public int classOf(final char c) {
+        return c < ASCII ? asciiClasses[c] : searchClass(c);
+    }
+
+    public int next(final int state, final char c) {
+        return transitions[state * classCount + classOf(c)] - 1;
+    }
+
+    public int accept(final int state) {
+        return accepts[state] - 1;
+    }
+
+    public int match(final CharInput input, final int from) throws IOException {
+        int state = 0;
+        int matchEnd = accept(state) >= 0 ? from : -1;
+        int cur = from;
+        while (cur < input.length() || input.fill()) {
+            state = next(state, input.charAt(cur));
+            if (state < 0) {
+                break;
+            }
+            ++cur;
+            if (accept(state) >= 0) {
+                matchEnd = cur;
+            }
+        }
+        return matchEnd;
+    }
+}
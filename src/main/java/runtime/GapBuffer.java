@@ -0,0 +1,85 @@
+package runtime;
+
+public class GapBuffer implements CharSequence {
+    private final static int MIN_GAP = 64;
+
+    private char[] chars;
+    private int gapStart;
+    private int gapEnd;
+
+    public GapBuffer(final CharSequence text) {
+        final int length = text.length();
+        this.chars = new char[length + MIN_GAP];
+        for (int i = 0; i < length; ++i) {
+            chars[i] = text.charAt(i);
+        }
+        this.gapStart = length;
+        this.gapEnd = chars.length;
+    }
+
+    private void moveGap(final int pos) {
+        if (pos < gapStart) {
+            System.arraycopy(chars, pos, chars, gapEnd - (gapStart - pos), gapStart - pos);
+            gapEnd -= gapStart - pos;
+            gapStart = pos;
+        } else if (pos > gapStart) {
+            System.arraycopy(chars, gapEnd, chars, gapStart, pos - gapStart);
+            gapEnd += pos - gapStart;
+            gapStart = pos;
+        }
+    }
+
+    private void reserve(final int count) {
+        if (gapEnd - gapStart >= count) {
+            return;
+        }
+        final int tail = chars.length - gapEnd;
+        final char[] grown = new char[Math.max(chars.length * 2, length() + count + MIN_GAP)];
+        System.arraycopy(chars, 0, grown, 0, gapStart);
+        System.arraycopy(chars, gapEnd, grown, grown.length - tail, tail);
+        chars = grown;
+        gapEnd = grown.length - tail;
+    }
+
+    public void replace(final int from, final int to, final CharSequence replacement) {
+        if (from < 0 || from > to || to > length()) {
+            throw new IndexOutOfBoundsException("Invalid range: [" + from + ", " + to + ")");
+        }
+        moveGap(from);
+        gapEnd += to - from;
+        final int count = replacement.length();
+        reserve(count);
+        for (int i = 0; i < count; ++i) {
+            chars[gapStart++] = replacement.charAt(i);
+        }
+    }
+
+    @Override
+    public int length() {
+        return chars.length - (gapEnd - gapStart);
+    }
+
+    @Override
+    public char charAt(final int index) {
+        return index < gapStart ? chars[index] : chars[index + (gapEnd - gapStart)];
+    }
+
+    @Override
+    public String subSequence(final int start, final int end) {
+        if (start < 0 || start > end || end > length()) {
+            throw new IndexOutOfBoundsException("Invalid range: [" + start + ", " + end + ")");
+        }
+        if (end <= gapStart) {
+            return new String(chars, start, end - start);
+        }
+        if (start >= gapStart) {
+            return new String(chars, start + (gapEnd - gapStart), end - start);
+        }
+        return new String(chars, start, gapStart - start) + new String(chars, gapEnd, end - gapStart);
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length());
+    }
+}
@@ -1,15 +1,44 @@
 package runtime;
 
-public class LexingException extends Exception {
+import java.io.IOException;
+
+public class LexingException extends ParseFailure {
     public LexingException(final String description) {
-        super(description);
+        super(description, null);
     }
 
     public LexingException(final Throwable cause) {
-        super(cause);
+        super(cause == null ? null : cause.toString(), cause);
     }
 
     public LexingException(final String description, final Throwable cause) {
         super(description, cause);
     }
+
+    private LexingException(final Code code, final long offset, final String expected, final String found,
+                            final String excerpt, final boolean truncated, final LineIndex lines) {
+        super(code, offset, expected, found, excerpt, truncated, lines);
+    }
+
+    public static LexingException unmatched(final CharInput input, final int from) throws IOException {
+        boolean truncated = input.length() - from > MAX_EXCERPT;
+        while (!truncated && input.fill()) {
+            truncated = input.length() - from > MAX_EXCERPT;
+        }
+        return new LexingException(Code.UNMATCHED_INPUT, input.getOffset() + from, null, null, excerpt(input, from),
+                truncated, input.getLines());
+    }
+
+    public LexingException rebase(final long base, final LineIndex lines) {
+        if (getCode() == Code.OTHER) {
+            return this;
+        }
+        return new LexingException(getCode(), base + getOffset(), getExpectedNames(), getFound(), getExcerpt(),
+                isTruncated(), lines);
+    }
+
+    public static LexingException unexpected(final TokenCursor lexer, final String expected, final String found) {
+        return new LexingException(Code.UNEXPECTED_TOKEN, lexer.getStart(), expected, found, null, false,
+                lexer.getLines());
+    }
 }
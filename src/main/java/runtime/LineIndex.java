@@ -0,0 +1,203 @@
+package runtime;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+public class LineIndex {
+    private final static int INITIAL_CAPACITY = 64;
+    private final static int READ_SIZE = 1 << 16;
+
+    private final CharInput input;
+    private final FileChannel channel;
+    private final long size;
+    private CharSequence text;
+    private long[] starts;
+    private int count;
+    private long scanned;
+    private boolean cr;
+
+    public LineIndex(final CharSequence text) {
+        this(null, text, null, -1, 0);
+    }
+
+    LineIndex(final CharInput input) {
+        this(input, input, null, -1, 0);
+    }
+
+    LineIndex(final FileChannel channel, final long size) {
+        this(null, null, channel, size, 0);
+    }
+
+    private LineIndex(final CharInput input, final CharSequence text, final FileChannel channel, final long size,
+                      final long scanned) {
+        this.input = input;
+        this.channel = channel;
+        this.size = size;
+        this.text = text;
+        this.starts = new long[INITIAL_CAPACITY];
+        this.count = 0;
+        this.scanned = scanned;
+        this.cr = false;
+    }
+
+    void detach() {
+        text = text.toString();
+    }
+
+    public synchronized boolean covers(final long offset) {
+        return offset < scanned || input == null || scanned >= input.getOffset();
+    }
+
+    private long end() {
+        if (channel != null) {
+            return size;
+        }
+        return (input == null ? 0 : input.getOffset()) + text.length();
+    }
+
+    private void mark(final char c, final long pos, final boolean afterCr) {
+        if (c == '\n' && afterCr) {
+            starts[count - 1] = pos + 1;
+            return;
+        }
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+        }
+        starts[count++] = pos + 1;
+    }
+
+    synchronized void scan(final long limit) {
+        if (channel != null) {
+            read(Math.min(limit, size));
+            return;
+        }
+        final long base = input == null ? 0 : input.getOffset();
+        if (scanned < base) {
+            return;
+        }
+        final int from = (int) (scanned - base);
+        final int to = (int) (Math.min(limit, base + text.length()) - base);
+        for (int i = from; i < to; ++i) {
+            final char c = text.charAt(i);
+            if (c <= '\r' && (c == '\n' || c == '\r')) {
+                mark(c, base + i, i == from ? cr : text.charAt(i - 1) == '\r');
+            }
+        }
+        if (to > from) {
+            cr = text.charAt(to - 1) == '\r';
+            scanned = base + to;
+        }
+    }
+
+    synchronized void scan(final char[] chars, final long base, final long limit) {
+        if (scanned < base) {
+            return;
+        }
+        final int from = (int) (scanned - base);
+        final int to = (int) (limit - base);
+        for (int i = from; i < to; ++i) {
+            final char c = chars[i];
+            if (c <= '\r' && (c == '\n' || c == '\r')) {
+                mark(c, base + i, i == from ? cr : chars[i - 1] == '\r');
+            }
+        }
+        if (to > from) {
+            cr = chars[to - 1] == '\r';
+            scanned = limit;
+        }
+    }
+
+    private void scan(final ByteBuffer bytes, final long base, final long limit) {
+        final int from = (int) (scanned - base);
+        final int to = (int) (limit - base);
+        for (int i = from; i < to; ++i) {
+            final byte c = bytes.get(i);
+            if (c <= '\r' && (c == '\n' || c == '\r')) {
+                mark((char) c, base + i, i == from ? cr : bytes.get(i - 1) == '\r');
+            }
+        }
+        if (to > from) {
+            cr = bytes.get(to - 1) == '\r';
+            scanned = limit;
+        }
+    }
+
+    private void read(final long limit) {
+        final ByteBuffer bytes = ByteBuffer.allocate(READ_SIZE);
+        try {
+            while (scanned < limit) {
+                bytes.clear();
+                bytes.limit((int) Math.min(READ_SIZE, limit - scanned));
+                final int read = channel.read(bytes, scanned);
+                if (read <= 0) {
+                    throw new IOException("Unexpected end of file at offset " + scanned);
+                }
+                scan(bytes, scanned, scanned + read);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private synchronized int find(final long offset) {
+        final long end = end();
+        if (offset < 0 || offset > end) {
+            throw new IndexOutOfBoundsException("Offset " + offset + " is out of input of length " + end);
+        }
+        if (offset >= scanned) {
+            if (!covers(offset)) {
+                return -1;
+            }
+            scan(offset + 1);
+        }
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (starts[mid] <= offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public synchronized int getLineCount() {
+        if (!covers(end())) {
+            throw new IllegalStateException("Lines before offset " + input.getOffset() + " were released");
+        }
+        scan(end());
+        return count + 1;
+    }
+
+    public int getLine(final long offset) {
+        final int line = find(offset);
+        return line < 0 ? -1 : line + 1;
+    }
+
+    public synchronized int getColumn(final long offset) {
+        final int line = find(offset);
+        if (line < 0) {
+            return -1;
+        }
+        return (int) (offset - (line == 0 ? 0 : starts[line - 1])) + 1;
+    }
+
+    public synchronized long getLineStart(final int line) {
+        if (line < 1 || line > getLineCount()) {
+            throw new IndexOutOfBoundsException("Line " + line + " is out of " + getLineCount() + " lines");
+        }
+        return line == 1 ? 0 : starts[line - 2];
+    }
+
+    public String describe(final long offset) {
+        if (!covers(offset)) {
+            return "offset " + offset;
+        }
+        return "line " + getLine(offset) + ", column " + getColumn(offset);
+    }
+}
@@ -0,0 +1,203 @@
+package runtime;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class MappedInput extends CharInput {
+    public final static int DEFAULT_WINDOW = 1 << 26;
+
+    private final static int BYTES = 256;
+    private final static int ASCII = 128;
+
+    private final FileChannel channel;
+    private final char[] table;
+    private final long size;
+    private final int window;
+    private MappedByteBuffer buffer;
+    private LineIndex lines;
+
+    public MappedInput(final FileChannel channel, final int window) throws IOException {
+        this(channel, StandardCharsets.ISO_8859_1, 0, window);
+    }
+
+    public MappedInput(final FileChannel channel, final long from, final int window) throws IOException {
+        this(channel, StandardCharsets.ISO_8859_1, from, window);
+    }
+
+    public MappedInput(final FileChannel channel, final Charset charset, final long from,
+                       final int window) throws IOException {
+        final char[] table = decodeTable(charset);
+        if (table == null) {
+            throw new IllegalArgumentException("Charset " + charset + " is not a single-byte ASCII-compatible charset");
+        }
+        this.channel = channel;
+        this.table = StandardCharsets.ISO_8859_1.equals(charset) ? null : table;
+        this.size = channel.size();
+        this.window = window;
+        if (from < 0 || from > size) {
+            throw new IndexOutOfBoundsException("Offset " + from + " is out of file of size " + size);
+        }
+        this.lines = null;
+        map(from, Math.min(size - from, window));
+    }
+
+    public static CharInput open(final Path path, final Charset charset) throws IOException {
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        if (StandardCharsets.ISO_8859_1.equals(charset)) {
+            return new MappedInput(channel, DEFAULT_WINDOW);
+        }
+        return new StreamInput(new MappedReader(channel, charset.newDecoder(), DEFAULT_WINDOW));
+    }
+
+    private static char[] decodeTable(final Charset charset) {
+        if (!charset.canEncode() || charset.newEncoder().maxBytesPerChar() != 1) {
+            return null;
+        }
+        final byte[] bytes = new byte[BYTES];
+        for (int i = 0; i < BYTES; ++i) {
+            bytes[i] = (byte) i;
+        }
+        final char[] table = new String(bytes, charset).toCharArray();
+        if (table.length != BYTES) {
+            return null;
+        }
+        for (int i = 0; i < ASCII; ++i) {
+            if (table[i] != i) {
+                return null;
+            }
+        }
+        return table;
+    }
+
+    public static boolean isSingleByte(final Charset charset) {
+        return decodeTable(charset) != null;
+    }
+
+    private void map(final long from, final long length) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, length);
+        offset = from;
+    }
+
+    @Override
+    public boolean fill() throws IOException {
+        final long mapped = buffer.limit();
+        if (offset + mapped >= size) {
+            return false;
+        }
+        final long length = Math.min(size - offset, mapped + window);
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Token does not fit into a single mapping at offset " + offset);
+        }
+        map(offset, length);
+        return true;
+    }
+
+    @Override
+    public int release(final int pos) throws IOException {
+        if (pos < window / 2) {
+            return pos;
+        }
+        map(offset + pos, Math.min(size - offset - pos, window));
+        return 0;
+    }
+
+    @Override
+    public LineIndex getLines() {
+        if (lines == null) {
+            lines = new LineIndex(channel, size);
+        }
+        return lines;
+    }
+
+    @Override
+    public int length() {
+        return buffer.limit();
+    }
+
+    @Override
+    public char charAt(final int index) {
+        final int c = buffer.get(index) & 0xff;
+        return table == null ? (char) c : table[c];
+    }
+
+    @Override
+    public CharSequence subSequence(final int start, final int end) {
+        final char[] chars = new char[end - start];
+        for (int i = start; i < end; ++i) {
+            chars[i - start] = charAt(i);
+        }
+        return new String(chars);
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length()).toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (lines != null && channel.isOpen()) {
+            lines.scan(offset + buffer.limit());
+        }
+        channel.close();
+    }
+
+    private static class MappedReader extends Reader {
+        private final FileChannel channel;
+        private final CharsetDecoder decoder;
+        private final long size;
+        private final int window;
+        private long position;
+        private MappedByteBuffer buffer;
+        private boolean flushed;
+
+        MappedReader(final FileChannel channel, final CharsetDecoder decoder, final int window) throws IOException {
+            this.channel = channel;
+            this.decoder = decoder;
+            this.size = channel.size();
+            this.window = window;
+            this.position = 0;
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, window));
+            this.flushed = false;
+        }
+
+        @Override
+        public int read(final char[] chars, final int off, final int len) throws IOException {
+            if (flushed) {
+                return -1;
+            }
+            final CharBuffer out = CharBuffer.wrap(chars, off, len);
+            while (true) {
+                final boolean last = position + buffer.limit() >= size;
+                final CoderResult result = decoder.decode(buffer, out, last);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                if (out.position() > off) {
+                    return out.position() - off;
+                }
+                if (last) {
+                    decoder.flush(out);
+                    flushed = true;
+                    return out.position() > off ? out.position() - off : -1;
+                }
+                position += buffer.position();
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(size - position, window));
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package runtime;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class MemoTable {
+    public static class Entry {
+        private final int rule;
+        private final int start;
+        private final Object[] args;
+        private Entry parent;
+        private Entry next;
+        private int mark;
+        private int length;
+        private Object value;
+        private boolean alive;
+
+        Entry(final int rule, final int start, final Object[] args, final Entry parent) {
+            this.rule = rule;
+            this.start = start;
+            this.args = args;
+            this.parent = parent;
+            this.next = null;
+            this.mark = start;
+            this.length = 0;
+            this.value = null;
+            this.alive = false;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+    }
+
+    private final static int MIN_GAP = 64;
+
+    private final List<Entry> stack;
+    private Entry[] heads;
+    private Entry[] owners;
+    private int gapStart;
+    private int gapEnd;
+    private int count;
+
+    public MemoTable(final int tokens) {
+        this.stack = new ArrayList<>();
+        this.heads = new Entry[tokens + MIN_GAP];
+        this.owners = new Entry[tokens + MIN_GAP];
+        this.gapStart = tokens;
+        this.gapEnd = tokens + MIN_GAP;
+        this.count = 0;
+    }
+
+    private int slot(final int index) {
+        return index < gapStart ? index : index + (gapEnd - gapStart);
+    }
+
+    private void moveGap(final int pos) {
+        if (gapStart == gapEnd) {
+            gapStart = pos;
+            gapEnd = pos;
+            return;
+        }
+        while (gapStart > pos) {
+            --gapStart;
+            --gapEnd;
+            heads[gapEnd] = heads[gapStart];
+            owners[gapEnd] = owners[gapStart];
+            heads[gapStart] = null;
+            owners[gapStart] = null;
+        }
+        while (gapStart < pos) {
+            heads[gapStart] = heads[gapEnd];
+            owners[gapStart] = owners[gapEnd];
+            heads[gapEnd] = null;
+            owners[gapEnd] = null;
+            ++gapStart;
+            ++gapEnd;
+        }
+    }
+
+    private void reserve(final int count) {
+        if (gapEnd - gapStart >= count) {
+            return;
+        }
+        final int tail = heads.length - gapEnd;
+        final int capacity = Math.max(heads.length * 2, heads.length - (gapEnd - gapStart) + count + MIN_GAP);
+        heads = grow(heads, capacity, tail);
+        owners = grow(owners, capacity, tail);
+        gapEnd = capacity - tail;
+    }
+
+    private Entry[] grow(final Entry[] values, final int capacity, final int tail) {
+        final Entry[] grown = new Entry[capacity];
+        System.arraycopy(values, 0, grown, 0, gapStart);
+        System.arraycopy(values, gapEnd, grown, capacity - tail, tail);
+        return grown;
+    }
+
+    private void kill(Entry entry) {
+        while (entry != null && entry.alive) {
+            entry.alive = false;
+            --count;
+            if (entry.length == 0) {
+                return;
+            }
+            entry = entry.parent;
+        }
+    }
+
+    private Entry top() {
+        return stack.isEmpty() ? null : stack.get(stack.size() - 1);
+    }
+
+    private void own(final Entry entry, final int pos) {
+        for (int i = entry.mark; i < pos; ++i) {
+            final int slot = slot(i);
+            if (owners[slot] != entry) {
+                kill(owners[slot]);
+                owners[slot] = entry;
+            }
+        }
+        entry.mark = pos;
+    }
+
+    private Entry unlink(final int slot, final int rule) {
+        Entry prev = null;
+        Entry entry = heads[slot];
+        while (entry != null) {
+            if (entry.rule == rule || !entry.alive) {
+                if (prev == null) {
+                    heads[slot] = entry.next;
+                } else {
+                    prev.next = entry.next;
+                }
+                if (entry.rule == rule) {
+                    return entry;
+                }
+            } else {
+                prev = entry;
+            }
+            entry = entry.next;
+        }
+        return null;
+    }
+
+    public Entry get(final int rule, final int start, final Object[] args) {
+        Entry entry = heads[slot(start)];
+        while (entry != null && entry.rule != rule) {
+            entry = entry.next;
+        }
+        if (entry == null || !entry.alive || !Arrays.equals(entry.args, args)) {
+            return null;
+        }
+        final Entry top = top();
+        if (top != null) {
+            own(top, start);
+            top.mark = start + entry.length;
+        }
+        if (entry.length > 0 && entry.parent != top) {
+            kill(entry.parent);
+            entry.parent = top;
+        }
+        return entry;
+    }
+
+    public int enter(final int rule, final int start, final Object[] args) {
+        final Entry top = top();
+        if (top != null) {
+            own(top, start);
+        }
+        kill(unlink(slot(start), rule));
+        stack.add(new Entry(rule, start, args, top));
+        return stack.size() - 1;
+    }
+
+    public void exit(final int depth, final int end, final Object value) {
+        while (stack.size() > depth) {
+            final Entry entry = stack.remove(stack.size() - 1);
+            own(entry, end);
+            entry.length = end - entry.start;
+            if (entry.length == 0) {
+                entry.parent = null;
+            }
+            entry.value = value;
+            entry.alive = true;
+            ++count;
+            final int slot = slot(entry.start);
+            kill(unlink(slot, entry.rule));
+            entry.next = heads[slot];
+            heads[slot] = entry;
+            final Entry parent = top();
+            if (parent != null) {
+                parent.mark = end;
+            }
+        }
+    }
+
+    public void begin() {
+        stack.clear();
+    }
+
+    public void invalidate(final TokenList.Damage damage) {
+        final int first = damage.getFrom();
+        if (first > 0) {
+            kill(owners[slot(first - 1)]);
+        }
+        moveGap(first);
+        for (int i = first; i < damage.getOldTo(); ++i) {
+            final int slot = slot(i);
+            for (Entry entry = heads[slot]; entry != null; entry = entry.next) {
+                kill(entry);
+            }
+            kill(owners[slot]);
+            heads[slot] = null;
+            owners[slot] = null;
+        }
+        gapEnd += damage.getOldTo() - first;
+        final int added = damage.getNewTo() - first;
+        reserve(added);
+        gapStart += added;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public void clear() {
+        stack.clear();
+        Arrays.fill(heads, null);
+        Arrays.fill(owners, null);
+        count = 0;
+    }
+}
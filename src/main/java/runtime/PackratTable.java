@@ -0,0 +1,123 @@
+package runtime;
+
+import java.util.Arrays;
+
+public class PackratTable {
+    public final static int DEFAULT_CAPACITY = 1 << 16;
+    private final static int PROBES = 8;
+    private final static long EMPTY = -1;
+
+    private final int mask;
+    private final long[] keys;
+    private final int[] ends;
+    private final Object[][] args;
+    private final Object[] values;
+    private int watermark;
+    private boolean dirty;
+
+    public PackratTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PackratTable(final int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.mask = capacity - 1;
+        this.keys = new long[capacity];
+        this.ends = new int[capacity];
+        this.args = new Object[capacity][];
+        this.values = new Object[capacity];
+        this.watermark = 0;
+        this.dirty = false;
+        Arrays.fill(keys, EMPTY);
+    }
+
+    private static long key(final int rule, final int start) {
+        return ((long) rule << 32) | start;
+    }
+
+    private static int start(final long key) {
+        return (int) key;
+    }
+
+    private int home(final long key) {
+        final long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & mask;
+    }
+
+    public int find(final int rule, final int start, final Object[] args) {
+        final long key = key(rule, start);
+        final int home = home(key);
+        for (int i = 0; i < PROBES; ++i) {
+            final int slot = (home + i) & mask;
+            if (keys[slot] == key && Arrays.equals(this.args[slot], args)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    public int getEnd(final int slot) {
+        return ends[slot];
+    }
+
+    public Object getValue(final int slot) {
+        return values[slot];
+    }
+
+    public void rethrow(final int slot) throws ParsingException, LexingException {
+        if (ends[slot] >= 0) {
+            return;
+        }
+        if (values[slot] instanceof LexingException) {
+            throw (LexingException) values[slot];
+        }
+        throw (ParsingException) values[slot];
+    }
+
+    public void put(final int rule, final int start, final int end, final Object[] args, final Object value) {
+        final long key = key(rule, start);
+        final int found = find(rule, start, args);
+        final int slot = found >= 0 ? found : victim(key);
+        keys[slot] = key;
+        ends[slot] = end;
+        this.args[slot] = args;
+        values[slot] = value;
+        dirty = true;
+    }
+
+    public void putFailure(final int rule, final int start, final Object[] args, final Exception failure) {
+        put(rule, start, -1, args, failure);
+    }
+
+    public void setWatermark(final int watermark) {
+        this.watermark = watermark;
+    }
+
+    private int victim(final long key) {
+        final int home = home(key);
+        int victim = home;
+        for (int i = 0; i < PROBES; ++i) {
+            final int slot = (home + i) & mask;
+            if (keys[slot] == EMPTY || keys[slot] == key || start(keys[slot]) < watermark) {
+                return slot;
+            }
+            if (start(keys[slot]) < start(keys[victim])) {
+                victim = slot;
+            }
+        }
+        return victim;
+    }
+
+    public void clear() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(args, null);
+        Arrays.fill(values, null);
+        watermark = 0;
+    }
+}
@@ -0,0 +1,372 @@
+package runtime;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+public class ParallelLexer implements TokenCursor, Closeable {
+    public final static int DEFAULT_CHUNK = 1 << 20;
+    private final static int INITIAL_CAPACITY = 64;
+
+    public interface LexerFactory {
+        TokenCursor create(CharInput input);
+    }
+
+    private static class Chunk {
+        private final long from;
+        private final long limit;
+        private int[] types;
+        private long[] starts;
+        private long[] ends;
+        private int size;
+        private int nextType;
+        private long nextStart;
+        private long nextEnd;
+        private boolean failed;
+
+        Chunk(final long from, final long limit) {
+            this.from = from;
+            this.limit = limit;
+            this.types = new int[INITIAL_CAPACITY];
+            this.starts = new long[INITIAL_CAPACITY];
+            this.ends = new long[INITIAL_CAPACITY];
+            this.size = 0;
+            this.nextType = -1;
+            this.failed = false;
+        }
+
+        private void add(final int type, final long start, final long stop) {
+            if (size == types.length) {
+                types = Arrays.copyOf(types, size * 2);
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+            }
+            types[size] = type;
+            starts[size] = start;
+            ends[size] = stop;
+            ++size;
+        }
+
+        private int find(final int type, final long start) {
+            final int index = Arrays.binarySearch(starts, 0, size, start);
+            return index >= 0 && types[index] == type ? index : -1;
+        }
+    }
+
+    private final LexerFactory factory;
+    private final String[] names;
+    private final int end;
+    private final CharSequence text;
+    private final FileChannel channel;
+    private final Charset charset;
+    private final long length;
+    private final int window;
+    private LineIndex lines;
+    private int[] types;
+    private long[] starts;
+    private long[] ends;
+    private int size;
+    private int index;
+
+    public ParallelLexer(final LexerFactory factory, final String[] names, final int end,
+                         final String boundaries, final CharSequence text,
+                         final ForkJoinPool pool) throws LexingException {
+        this(factory, names, end, boundaries, text, pool, DEFAULT_CHUNK);
+    }
+
+    public ParallelLexer(final LexerFactory factory, final String[] names, final int end,
+                         final String boundaries, final CharSequence text,
+                         final ForkJoinPool pool, final int chunk) throws LexingException {
+        this(factory, names, end, text, null, null, text.length(), chunk);
+        lex(boundaries, pool, chunk);
+    }
+
+    public ParallelLexer(final LexerFactory factory, final String[] names, final int end,
+                         final String boundaries, final Path path, final Charset charset,
+                         final ForkJoinPool pool) throws IOException, LexingException {
+        this(factory, names, end, boundaries, open(path, charset), charset, pool, DEFAULT_CHUNK);
+    }
+
+    public ParallelLexer(final LexerFactory factory, final String[] names, final int end,
+                         final String boundaries, final FileChannel channel, final Charset charset,
+                         final ForkJoinPool pool, final int chunk) throws IOException, LexingException {
+        this(factory, names, end, null, channel, charset, channel.size(), chunk);
+        if (!MappedInput.isSingleByte(charset)) {
+            channel.close();
+            throw new IllegalArgumentException("Charset " + charset + " is not a single-byte ASCII-compatible charset");
+        }
+        try {
+            lex(boundaries, pool, chunk);
+        } catch (final LexingException e) {
+            close(e.getOffset() + 1);
+            throw e;
+        } catch (final RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private ParallelLexer(final LexerFactory factory, final String[] names, final int end,
+                          final CharSequence text, final FileChannel channel, final Charset charset,
+                          final long length, final int chunk) {
+        this.factory = factory;
+        this.names = names;
+        this.end = end;
+        this.text = text;
+        this.channel = channel;
+        this.charset = charset;
+        this.length = length;
+        this.window = (int) Math.min(MappedInput.DEFAULT_WINDOW, 2L * chunk);
+        this.lines = null;
+        this.types = new int[INITIAL_CAPACITY];
+        this.starts = new long[INITIAL_CAPACITY];
+        this.ends = new long[INITIAL_CAPACITY];
+        this.size = 0;
+        this.index = -1;
+    }
+
+    private static FileChannel open(final Path path, final Charset charset) throws IOException {
+        if (!MappedInput.isSingleByte(charset)) {
+            throw new IllegalArgumentException("Charset " + charset + " is not a single-byte ASCII-compatible charset");
+        }
+        return FileChannel.open(path, StandardOpenOption.READ);
+    }
+
+    private void lex(final String boundaries, final ForkJoinPool pool, final int chunk) throws LexingException {
+        final List<Chunk> chunks = split(boundaries, chunk);
+        final List<ForkJoinTask<Chunk>> tasks = new ArrayList<>(chunks.size());
+        for (final Chunk part : chunks) {
+            tasks.add(pool.submit(() -> lex(part)));
+        }
+        for (int i = 0; i < chunks.size(); ++i) {
+            tasks.get(i).join();
+        }
+        join(chunks);
+    }
+
+    private static boolean isBoundary(final String boundaries, final char c) {
+        for (int i = 0; i < boundaries.length(); i += 2) {
+            if (c >= boundaries.charAt(i) && c <= boundaries.charAt(i + 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<Chunk> split(final String boundaries, final int chunk) throws LexingException {
+        final List<Chunk> chunks = new ArrayList<>();
+        long from = 0;
+        long target = chunk;
+        while (!boundaries.isEmpty() && target < length) {
+            final long cut = boundaryAt(boundaries, Math.max(target, from + 1));
+            if (cut < 0) {
+                break;
+            }
+            chunks.add(new Chunk(from, cut));
+            from = cut;
+            target = cut + chunk;
+        }
+        chunks.add(new Chunk(from, Long.MAX_VALUE));
+        return chunks;
+    }
+
+    private long boundaryAt(final String boundaries, final long from) throws LexingException {
+        final CharInput input = inputAt(from);
+        try {
+            for (int i = 0; i < input.length() || input.fill(); ++i) {
+                if (isBoundary(boundaries, input.charAt(i))) {
+                    return from + i;
+                }
+            }
+        } catch (IOException e) {
+            throw new LexingException(e);
+        }
+        return -1;
+    }
+
+    private CharInput inputAt(final long from) throws LexingException {
+        if (text != null) {
+            return new TextInput(CharBuffer.wrap(text, (int) from, text.length()));
+        }
+        try {
+            return new MappedInput(channel, charset, from, window);
+        } catch (IOException e) {
+            throw new LexingException(e);
+        }
+    }
+
+    private Chunk lex(final Chunk chunk) {
+        try {
+            final CharInput input = inputAt(chunk.from);
+            final long base = chunk.from - input.getOffset();
+            final TokenCursor lexer = factory.create(input);
+            while (true) {
+                final int type = lexer.advance();
+                final long start = base + lexer.getStart();
+                final long stop = base + lexer.getEnd();
+                if (start >= chunk.limit) {
+                    chunk.nextType = type;
+                    chunk.nextStart = start;
+                    chunk.nextEnd = stop;
+                    return chunk;
+                }
+                chunk.add(type, start, stop);
+                if (type == end) {
+                    return chunk;
+                }
+            }
+        } catch (LexingException e) {
+            chunk.failed = true;
+            return chunk;
+        }
+    }
+
+    private void join(final List<Chunk> chunks) throws LexingException {
+        CharInput input = inputAt(0);
+        long base = -input.getOffset();
+        TokenCursor lexer = factory.create(input);
+        int type;
+        try {
+            type = lexer.advance();
+        } catch (LexingException e) {
+            throw e.rebase(base, getLines());
+        }
+        long start = base + lexer.getStart();
+        long stop = base + lexer.getEnd();
+        int current = 0;
+        while (true) {
+            if (type == end) {
+                add(type, start, stop);
+                return;
+            }
+            while (current < chunks.size() && chunks.get(current).limit <= start) {
+                ++current;
+            }
+            final Chunk chunk = current < chunks.size() ? chunks.get(current) : null;
+            final int found = chunk != null && chunk.from <= start ? chunk.find(type, start) : -1;
+            if (found >= 0 && chunk.ends[found] == stop) {
+                for (int i = found; i < chunk.size; ++i) {
+                    add(chunk.types[i], chunk.starts[i], chunk.ends[i]);
+                }
+                if (chunk.size > 0 && chunk.types[chunk.size - 1] == end) {
+                    return;
+                }
+                ++current;
+                if (!chunk.failed && chunk.nextType >= 0) {
+                    type = chunk.nextType;
+                    start = chunk.nextStart;
+                    stop = chunk.nextEnd;
+                    lexer = null;
+                    continue;
+                }
+                input = inputAt(ends[size - 1]);
+                base = ends[size - 1] - input.getOffset();
+                lexer = factory.create(input);
+            } else {
+                add(type, start, stop);
+                if (lexer == null) {
+                    input = inputAt(stop);
+                    base = stop - input.getOffset();
+                    lexer = factory.create(input);
+                }
+            }
+            try {
+                type = lexer.advance();
+            } catch (LexingException e) {
+                throw e.rebase(base, getLines());
+            }
+            start = base + lexer.getStart();
+            stop = base + lexer.getEnd();
+        }
+    }
+
+    private void add(final int type, final long start, final long stop) {
+        if (size == types.length) {
+            types = Arrays.copyOf(types, size * 2);
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+        }
+        types[size] = type;
+        starts[size] = start;
+        ends[size] = stop;
+        ++size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int advance() {
+        if (index + 1 < size) {
+            ++index;
+        }
+        return types[index];
+    }
+
+    @Override
+    public int getTypeId() {
+        return types[index];
+    }
+
+    @Override
+    public long getStart() {
+        return starts[index];
+    }
+
+    @Override
+    public long getEnd() {
+        return ends[index];
+    }
+
+    @Override
+    public LineIndex getLines() {
+        if (lines == null) {
+            lines = text != null ? new LineIndex(text) : new LineIndex(channel, length);
+        }
+        return lines;
+    }
+
+    @Override
+    public TokenData getData() {
+        if (text != null) {
+            return new TokenData(names[types[index]], text, (int) starts[index], (int) ends[index]);
+        }
+        final ByteBuffer bytes = ByteBuffer.allocate((int) (ends[index] - starts[index]));
+        try {
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes, starts[index] + bytes.position()) < 0) {
+                    throw new IOException("Unexpected end of file at offset " + (starts[index] + bytes.position()));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new TokenData(names[types[index]], new String(bytes.array(), charset), starts[index]);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            close(index < 0 ? 0 : ends[index]);
+        }
+    }
+
+    private void close(final long limit) throws IOException {
+        if (lines != null && channel.isOpen()) {
+            lines.scan(limit);
+        }
+        channel.close();
+    }
+}
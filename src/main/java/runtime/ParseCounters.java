@@ -0,0 +1,129 @@
+package runtime;
+
+import java.util.Arrays;
+
+public class ParseCounters implements ParseMetrics {
+    private final String[] ruleNames;
+    private final String[] tokenNames;
+    private final long[] calls;
+    private final long[] tokens;
+    private final long[] nanos;
+    private final long[][] alternatives;
+    private final long[] attempts;
+    private final long[] hits;
+
+    public ParseCounters(final String[] ruleNames, final String[] tokenNames) {
+        this.ruleNames = ruleNames;
+        this.tokenNames = tokenNames;
+        this.calls = new long[ruleNames.length];
+        this.tokens = new long[ruleNames.length];
+        this.nanos = new long[ruleNames.length];
+        this.alternatives = new long[ruleNames.length][0];
+        this.attempts = new long[tokenNames.length];
+        this.hits = new long[tokenNames.length];
+    }
+
+    @Override
+    public void rule(final int rule, final long tokens, final long nanos) {
+        ++this.calls[rule];
+        this.tokens[rule] += tokens;
+        this.nanos[rule] += nanos;
+    }
+
+    @Override
+    public void alternative(final int rule, final int alternative) {
+        if (alternative >= alternatives[rule].length) {
+            alternatives[rule] = Arrays.copyOf(alternatives[rule], alternative + 1);
+        }
+        ++alternatives[rule][alternative];
+    }
+
+    @Override
+    public void match(final int rule, final boolean hit) {
+        ++attempts[rule];
+        if (hit) {
+            ++hits[rule];
+        }
+    }
+
+    public void clear() {
+        for (int i = 0; i < ruleNames.length; ++i) {
+            calls[i] = 0;
+            tokens[i] = 0;
+            nanos[i] = 0;
+            Arrays.fill(alternatives[i], 0);
+        }
+        for (int i = 0; i < tokenNames.length; ++i) {
+            attempts[i] = 0;
+            hits[i] = 0;
+        }
+    }
+
+    public int getRuleCount() {
+        return ruleNames.length;
+    }
+
+    public String getRuleName(final int rule) {
+        return ruleNames[rule];
+    }
+
+    public long getCalls(final int rule) {
+        return calls[rule];
+    }
+
+    public long getTokens(final int rule) {
+        return tokens[rule];
+    }
+
+    public long getNanos(final int rule) {
+        return nanos[rule];
+    }
+
+    public long getAlternativeHits(final int rule, final int alternative) {
+        return alternative < alternatives[rule].length ? alternatives[rule][alternative] : 0;
+    }
+
+    public int getTokenCount() {
+        return tokenNames.length;
+    }
+
+    public String getTokenName(final int token) {
+        return tokenNames[token];
+    }
+
+    public long getAttempts(final int token) {
+        return attempts[token];
+    }
+
+    public long getHits(final int token) {
+        return hits[token];
+    }
+
+    public String toProfile() {
+        final StringBuilder res = new StringBuilder();
+        for (int i = 0; i < tokenNames.length; ++i) {
+            res.append("token ").append(tokenNames[i]).append(' ').append(hits[i]).append('\n');
+        }
+        for (int i = 0; i < ruleNames.length; ++i) {
+            for (int j = 0; j < alternatives[i].length; ++j) {
+                res.append("alternative ").append(ruleNames[i]).append(' ').append(j).append(' ')
+                        .append(alternatives[i][j]).append('\n');
+            }
+        }
+        return res.toString();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder res = new StringBuilder();
+        res.append(String.format("%-24s %12s %12s %14s%n", "rule", "calls", "tokens", "nanos"));
+        for (int i = 0; i < ruleNames.length; ++i) {
+            res.append(String.format("%-24s %12d %12d %14d%n", ruleNames[i], calls[i], tokens[i], nanos[i]));
+        }
+        res.append(String.format("%-24s %12s %12s%n", "token", "attempts", "hits"));
+        for (int i = 0; i < tokenNames.length; ++i) {
+            res.append(String.format("%-24s %12d %12d%n", tokenNames[i], attempts[i], hits[i]));
+        }
+        return res.toString();
+    }
+}
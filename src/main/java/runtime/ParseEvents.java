@@ -0,0 +1,142 @@
+package runtime;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ParseEvents implements ParseMetrics {
+    private final static String PACKAGE = "jdk.jfr.";
+    private final static MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    private static class EventKind {
+        private final MethodHandle enabled;
+        private final MethodHandle create;
+        private final MethodHandle set;
+        private final MethodHandle commit;
+
+        EventKind(final String name, final String label, final String[] fields, final Class<?>[] types,
+                  final String[] labels) throws ReflectiveOperationException {
+            final Class<?> event = Class.forName(PACKAGE + "Event");
+            final Class<?> factoryClass = Class.forName(PACKAGE + "EventFactory");
+            final Class<?> descriptor = Class.forName(PACKAGE + "ValueDescriptor");
+            final List<Object> annotations = new ArrayList<>();
+            annotations.add(annotation("Name", name));
+            annotations.add(annotation("Label", label));
+            annotations.add(annotation("Category", new String[]{"Parser"}));
+            annotations.add(annotation("StackTrace", false));
+            final List<Object> values = new ArrayList<>();
+            for (int i = 0; i < fields.length; ++i) {
+                final List<Object> fieldAnnotations = new ArrayList<>();
+                fieldAnnotations.add(annotation("Label", labels[i]));
+                if (fields[i].equals("nanos")) {
+                    fieldAnnotations.add(annotation("Timespan", "NANOSECONDS"));
+                }
+                values.add(descriptor.getConstructor(Class.class, String.class, List.class)
+                        .newInstance(types[i], fields[i], fieldAnnotations));
+            }
+            final Object factory = factoryClass.getMethod("create", List.class, List.class)
+                    .invoke(null, annotations, values);
+            final Object type = factoryClass.getMethod("getEventType").invoke(factory);
+            this.enabled = LOOKUP.findVirtual(Class.forName(PACKAGE + "EventType"), "isEnabled",
+                    MethodType.methodType(boolean.class)).bindTo(type);
+            this.create = LOOKUP.findVirtual(factoryClass, "newEvent", MethodType.methodType(event))
+                    .bindTo(factory).asType(MethodType.methodType(Object.class));
+            this.set = LOOKUP.findVirtual(event, "set", MethodType.methodType(void.class, int.class, Object.class))
+                    .asType(MethodType.methodType(void.class, Object.class, int.class, Object.class));
+            this.commit = LOOKUP.findVirtual(event, "commit", MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(void.class, Object.class));
+        }
+
+        private static Object annotation(final String name, final Object value) throws ReflectiveOperationException {
+            return Class.forName(PACKAGE + "AnnotationElement").getConstructor(Class.class, Object.class)
+                    .newInstance(Class.forName(PACKAGE + name), value);
+        }
+
+        boolean isEnabled() {
+            try {
+                return (boolean) enabled.invokeExact();
+            } catch (Throwable e) {
+                return false;
+            }
+        }
+
+        void commit(final Object... values) {
+            try {
+                final Object event = (Object) create.invokeExact();
+                for (int i = 0; i < values.length; ++i) {
+                    set.invokeExact(event, i, values[i]);
+                }
+                commit.invokeExact(event);
+            } catch (Throwable e) {
+                throw new IllegalStateException("Failed to commit " + Arrays.toString(values), e);
+            }
+        }
+    }
+
+    private final String[] ruleNames;
+    private final String[] tokenNames;
+    private final EventKind rules;
+    private final EventKind alternatives;
+    private final EventKind matches;
+
+    private ParseEvents(final String[] ruleNames, final String[] tokenNames) throws ReflectiveOperationException {
+        this.ruleNames = ruleNames;
+        this.tokenNames = tokenNames;
+        this.rules = new EventKind("runtime.ParseRule", "Parse Rule",
+                new String[]{"rule", "tokens", "nanos"},
+                new Class<?>[]{String.class, long.class, long.class},
+                new String[]{"Rule", "Tokens", "Duration"});
+        this.alternatives = new EventKind("runtime.ParseAlternative", "Parse Alternative",
+                new String[]{"rule", "alternative"},
+                new Class<?>[]{String.class, int.class},
+                new String[]{"Rule", "Alternative"});
+        this.matches = new EventKind("runtime.TokenMatch", "Token Match",
+                new String[]{"token", "hit"},
+                new Class<?>[]{String.class, boolean.class},
+                new String[]{"Token", "Hit"});
+    }
+
+    public static boolean isAvailable() {
+        try {
+            Class.forName(PACKAGE + "EventFactory");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    public static ParseMetrics create(final String[] ruleNames, final String[] tokenNames) {
+        if (!isAvailable()) {
+            return ParseMetrics.NONE;
+        }
+        try {
+            return new ParseEvents(ruleNames, tokenNames);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return ParseMetrics.NONE;
+        }
+    }
+
+    @Override
+    public void rule(final int rule, final long tokens, final long nanos) {
+        if (rules.isEnabled()) {
+            rules.commit(ruleNames[rule], tokens, nanos);
+        }
+    }
+
+    @Override
+    public void alternative(final int rule, final int alternative) {
+        if (alternatives.isEnabled()) {
+            alternatives.commit(ruleNames[rule], alternative);
+        }
+    }
+
+    @Override
+    public void match(final int rule, final boolean hit) {
+        if (matches.isEnabled()) {
+            matches.commit(tokenNames[rule], hit);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package runtime;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public abstract class ParseFailure extends Exception {
+    public enum Code {
+        OTHER, UNMATCHED_INPUT, UNEXPECTED_TOKEN, EXPECTED_END
+    }
+
+    public final static int MAX_EXCERPT = 64;
+
+    private final Code code;
+    private final long offset;
+    private final String expected;
+    private final String found;
+    private final String excerpt;
+    private final boolean truncated;
+    private final LineIndex lines;
+    private String message;
+
+    protected ParseFailure(final String description, final Throwable cause) {
+        super(description, cause);
+        this.code = Code.OTHER;
+        this.offset = -1;
+        this.expected = null;
+        this.found = null;
+        this.excerpt = null;
+        this.truncated = false;
+        this.lines = null;
+    }
+
+    protected ParseFailure(final Code code, final long offset, final String expected, final String found,
+                           final String excerpt, final boolean truncated, final LineIndex lines) {
+        super(null, null, false, false);
+        this.code = code;
+        this.offset = offset;
+        this.expected = expected;
+        this.found = found;
+        this.excerpt = excerpt;
+        this.truncated = truncated;
+        this.lines = lines;
+    }
+
+    public static String excerpt(final CharSequence input, final int from) {
+        final int to = (int) Math.min(input.length(), (long) from + MAX_EXCERPT);
+        return input.subSequence(from, to).toString();
+    }
+
+    public Code getCode() {
+        return code;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public List<String> getExpected() {
+        return expected == null ? Collections.emptyList() : Arrays.asList(expected.split(", "));
+    }
+
+    String getExpectedNames() {
+        return expected;
+    }
+
+    public String getFound() {
+        return found;
+    }
+
+    public String getExcerpt() {
+        return excerpt;
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public int getLine() {
+        return lines == null || offset < 0 ? -1 : lines.getLine(offset);
+    }
+
+    public int getColumn() {
+        return lines == null || offset < 0 ? -1 : lines.getColumn(offset);
+    }
+
+    private String position() {
+        if (lines == null || !lines.covers(offset)) {
+            return "offset " + offset;
+        }
+        return lines.describe(offset) + " (offset " + offset + ")";
+    }
+
+    @Override
+    public String getMessage() {
+        if (message != null) {
+            return message;
+        }
+        switch (code) {
+            case UNMATCHED_INPUT:
+                message = "Unmatched data in input at " + position() + ": \"" + excerpt
+                        + (truncated ? "...\"" : "\"");
+                break;
+            case UNEXPECTED_TOKEN:
+                message = "Expected " + expected + " but found " + found + " at " + position();
+                break;
+            case EXPECTED_END:
+                message = "Expected end of input but found " + found + " at " + position();
+                break;
+            default:
+                message = super.getMessage();
+                break;
+        }
+        return message;
+    }
+}
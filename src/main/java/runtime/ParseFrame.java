@@ -0,0 +1,27 @@
+package runtime;
+
+public abstract class ParseFrame {
+    protected final static int TAIL = -1;
+
+    protected int state;
+    protected ParseFrame child;
+    private ParseFrame parent;
+
+    protected abstract ParseFrame step() throws ParsingException, LexingException;
+
+    public static ParseFrame run(final ParseFrame root) throws ParsingException, LexingException {
+        ParseFrame top = root;
+        while (true) {
+            final ParseFrame next = top.step();
+            if (next != null) {
+                next.parent = top.state == TAIL ? top.parent : top;
+                top = next;
+            } else if (top.parent == null) {
+                return top;
+            } else {
+                top.parent.child = top;
+                top = top.parent;
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package runtime;
+
+public interface ParseMetrics {
+    ParseMetrics NONE = new ParseMetrics() {
+    };
+
+    default void rule(final int rule, final long tokens, final long nanos) {
+    }
+
+    default void match(final int rule, final boolean hit) {
+    }
+
+    default void alternative(final int rule, final int alternative) {
+    }
+}
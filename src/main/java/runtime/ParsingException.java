@@ -1,15 +1,28 @@
 package runtime;
 
-public class ParsingException extends Exception {
+public class ParsingException extends ParseFailure {
     public ParsingException(final String description) {
-        super(description);
+        super(description, null);
     }
 
     public ParsingException(final Throwable cause) {
-        super(cause);
+        super(cause == null ? null : cause.toString(), cause);
     }
 
     public ParsingException(final String description, final Throwable cause) {
         super(description, cause);
     }
+
+    private ParsingException(final Code code, final long offset, final String expected, final String found,
+                             final LineIndex lines) {
+        super(code, offset, expected, found, null, false, lines);
+    }
+
+    public static ParsingException unexpected(final TokenCursor lexer, final String expected, final String found) {
+        return new ParsingException(Code.UNEXPECTED_TOKEN, lexer.getStart(), expected, found, lexer.getLines());
+    }
+
+    public static ParsingException trailing(final TokenCursor lexer, final String found) {
+        return new ParsingException(Code.EXPECTED_END, lexer.getStart(), null, found, lexer.getLines());
+    }
 }
@@ -0,0 +1,234 @@
+package runtime;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+public class PipelinedCursor implements TokenCursor, Closeable {
+    public final static int DEFAULT_CAPACITY = 1 << 14;
+    private final static int BATCH = 256;
+    private final static int SPINS = 100;
+    private final static int FAILED = -1;
+
+    public interface DataFactory {
+        TokenData create(int type, long start, long end);
+    }
+
+    private final TokenCursor source;
+    private final int endType;
+    private final DataFactory factory;
+    private final int mask;
+    private final int batch;
+    private final int[] types;
+    private final long[] starts;
+    private final long[] ends;
+    private final TokenData[] data;
+    private final AtomicLong head;
+    private final AtomicLong tail;
+    private volatile Throwable failure;
+    private volatile boolean closed;
+    private volatile boolean producerWaiting;
+    private volatile boolean consumerWaiting;
+    private volatile Thread producer;
+    private Thread consumer;
+
+    private long cursor;
+    private long limit;
+    private long releasedTail;
+    private int type;
+    private long start;
+    private long end;
+    private TokenData current;
+
+    public PipelinedCursor(final TokenCursor source, final int endType, final DataFactory factory) {
+        this(source, endType, factory, DEFAULT_CAPACITY);
+    }
+
+    public PipelinedCursor(final TokenCursor source, final int endType, final DataFactory factory, final int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.source = source;
+        this.endType = endType;
+        this.factory = factory;
+        this.mask = capacity - 1;
+        this.batch = Math.max(1, Math.min(BATCH, capacity / 4));
+        this.types = new int[capacity];
+        this.starts = new long[capacity];
+        this.ends = new long[capacity];
+        this.data = factory == null ? new TokenData[capacity] : null;
+        this.head = new AtomicLong();
+        this.tail = new AtomicLong();
+        this.failure = null;
+        this.closed = false;
+        this.producerWaiting = false;
+        this.consumerWaiting = false;
+        this.type = FAILED;
+    }
+
+    private void produce() {
+        long produced = 0;
+        long published = 0;
+        long freeUpTo = types.length;
+        try {
+            int next;
+            do {
+                while (produced == freeUpTo) {
+                    if (published != produced) {
+                        publish(produced);
+                        published = produced;
+                    }
+                    freeUpTo = tail.get() + types.length;
+                    if (produced == freeUpTo) {
+                        if (closed) {
+                            return;
+                        }
+                        producerWaiting = true;
+                        freeUpTo = tail.get() + types.length;
+                        if (produced == freeUpTo && !closed) {
+                            LockSupport.park(this);
+                        }
+                        producerWaiting = false;
+                    }
+                }
+                next = source.advance();
+                final int idx = (int) (produced & mask);
+                types[idx] = next;
+                starts[idx] = source.getStart();
+                ends[idx] = source.getEnd();
+                if (data != null) {
+                    data[idx] = source.getData();
+                }
+                ++produced;
+                if (produced - published >= batch) {
+                    publish(produced);
+                    published = produced;
+                }
+            } while (next != endType && !closed);
+        } catch (Throwable e) {
+            head.set(produced);
+            failure = e;
+        }
+        publish(produced);
+    }
+
+    private void publish(final long produced) {
+        head.set(produced);
+        if (consumerWaiting) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    private void release() {
+        tail.set(cursor);
+        releasedTail = cursor;
+        if (producerWaiting) {
+            LockSupport.unpark(producer);
+        }
+    }
+
+    private void await() {
+        if (producer == null) {
+            final Thread thread = new Thread(this::produce, "token-producer");
+            thread.setDaemon(true);
+            producer = thread;
+            thread.start();
+        }
+        release();
+        int spins = 0;
+        while ((limit = head.get()) == cursor) {
+            if ((failure != null || closed) && head.get() == cursor) {
+                return;
+            }
+            if (++spins < SPINS) {
+                Thread.yield();
+                continue;
+            }
+            consumer = Thread.currentThread();
+            consumerWaiting = true;
+            if (head.get() == cursor && failure == null && !closed) {
+                LockSupport.park(this);
+            }
+            consumerWaiting = false;
+        }
+    }
+
+    private LexingException failed() {
+        if (failure == null) {
+            return new LexingException("Token pipeline is closed");
+        }
+        if (failure instanceof LexingException) {
+            return (LexingException) failure;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        return new LexingException(failure);
+    }
+
+    @Override
+    public int advance() throws LexingException {
+        if (type == endType) {
+            return type;
+        }
+        if (cursor == limit) {
+            await();
+            if (cursor == limit) {
+                throw failed();
+            }
+        }
+        final int idx = (int) (cursor & mask);
+        type = types[idx];
+        start = starts[idx];
+        end = ends[idx];
+        if (data != null) {
+            current = data[idx];
+            data[idx] = null;
+        }
+        ++cursor;
+        if (cursor - releasedTail >= batch) {
+            release();
+        }
+        return type;
+    }
+
+    @Override
+    public int getTypeId() {
+        return type;
+    }
+
+    @Override
+    public long getStart() {
+        return start;
+    }
+
+    @Override
+    public long getEnd() {
+        return end;
+    }
+
+    @Override
+    public LineIndex getLines() {
+        return source.getLines();
+    }
+
+    @Override
+    public TokenData getData() {
+        return data != null ? current : factory.create(type, start, end);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        final Thread thread = producer;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        if (consumerWaiting) {
+            LockSupport.unpark(consumer);
+        }
+    }
+}
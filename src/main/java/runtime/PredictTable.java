@@ -0,0 +1,24 @@
+package runtime;
+
+public class PredictTable {
+    private final int[] bases;
+    private final char[] owners;
+    private final char[] alternatives;
+
+    public PredictTable(final String bases, final String owners, final String alternatives) {
+        this.bases = new int[bases.length() / 2];
+        for (int i = 0; i < this.bases.length; ++i) {
+            this.bases[i] = bases.charAt(2 * i) << 16 | bases.charAt(2 * i + 1);
+        }
+        this.owners = owners.toCharArray();
+        this.alternatives = alternatives.toCharArray();
+    }
+
+    public int predict(final int rule, final int type) {
+        final int index = bases[rule] + type;
+        if (index >= owners.length || owners[index] != rule + 1) {
+            return -1;
+        }
+        return alternatives[index] - 1;
+    }
+}
@@ -0,0 +1,90 @@
+package runtime;
+
+import java.io.IOException;
+import java.io.Reader;
+
+public class StreamInput extends CharInput {
+    public final static int DEFAULT_CAPACITY = 1 << 16;
+
+    private final Reader reader;
+    private final boolean lines;
+    private char[] buffer;
+    private int end;
+    private boolean eof;
+
+    public StreamInput(final Reader reader) {
+        this(reader, DEFAULT_CAPACITY);
+    }
+
+    public StreamInput(final Reader reader, final int capacity) {
+        this(reader, capacity, false);
+    }
+
+    public StreamInput(final Reader reader, final int capacity, final boolean lines) {
+        this.reader = reader;
+        this.lines = lines;
+        this.buffer = new char[capacity];
+        this.end = 0;
+        this.eof = false;
+    }
+
+    @Override
+    public boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        if (end == buffer.length) {
+            final char[] grown = new char[buffer.length * 2];
+            System.arraycopy(buffer, 0, grown, 0, end);
+            buffer = grown;
+        }
+        final int read = reader.read(buffer, end, buffer.length - end);
+        if (read < 0) {
+            eof = true;
+            reader.close();
+            return false;
+        }
+        end += read;
+        return true;
+    }
+
+    @Override
+    public int release(final int pos) {
+        if (pos < buffer.length / 2) {
+            return pos;
+        }
+        if (lines) {
+            getLines().scan(buffer, offset, offset + pos);
+        }
+        System.arraycopy(buffer, pos, buffer, 0, end - pos);
+        end -= pos;
+        offset += pos;
+        return 0;
+    }
+
+    @Override
+    public int length() {
+        return end;
+    }
+
+    @Override
+    public char charAt(final int index) {
+        return buffer[index];
+    }
+
+    @Override
+    public CharSequence subSequence(final int start, final int end) {
+        return new String(buffer, start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, end);
+    }
+
+    @Override
+    public void close() throws IOException {
+        eof = true;
+        reader.close();
+    }
+}
@@ -0,0 +1,39 @@
+package runtime;
+
+public class TextInput extends CharInput {
+    private final CharSequence text;
+
+    public TextInput(final CharSequence text) {
+        this.text = text;
+    }
+
+    @Override
+    public boolean fill() {
+        return false;
+    }
+
+    @Override
+    public boolean isStable() {
+        return true;
+    }
+
+    @Override
+    public int length() {
+        return text.length();
+    }
+
+    @Override
+    public char charAt(final int index) {
+        return text.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(final int start, final int end) {
+        return text.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+}
@@ -0,0 +1,125 @@
+package runtime;
+
+import java.util.Arrays;
+
+public class TokenBuffer implements TokenCursor {
+    private final static int INITIAL_CAPACITY = 256;
+
+    private final TokenCursor source;
+    private final PipelinedCursor.DataFactory factory;
+    private int[] types;
+    private long[] starts;
+    private long[] ends;
+    private TokenData[] data;
+    private int base;
+    private int size;
+    private int index;
+    private int marks;
+
+    public TokenBuffer(final TokenCursor source, final PipelinedCursor.DataFactory factory) {
+        this.source = source;
+        this.factory = factory;
+        this.types = new int[INITIAL_CAPACITY];
+        this.starts = new long[INITIAL_CAPACITY];
+        this.ends = new long[INITIAL_CAPACITY];
+        this.data = factory == null ? new TokenData[INITIAL_CAPACITY] : null;
+        this.base = 0;
+        this.size = 0;
+        this.index = -1;
+        this.marks = 0;
+    }
+
+    public void reset() {
+        base = 0;
+        size = 0;
+        index = -1;
+        marks = 0;
+    }
+
+    private void fetch() throws LexingException {
+        if (marks == 0) {
+            base = index;
+            size = 0;
+        } else if (size == types.length) {
+            types = Arrays.copyOf(types, size * 2);
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+            if (data != null) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+        }
+        types[size] = source.advance();
+        starts[size] = source.getStart();
+        ends[size] = source.getEnd();
+        if (data != null) {
+            data[size] = source.getData();
+        }
+        ++size;
+    }
+
+    @Override
+    public int advance() throws LexingException {
+        ++index;
+        if (index - base == size) {
+            fetch();
+        }
+        return types[index - base];
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getBase() {
+        return base;
+    }
+
+    public int mark() {
+        ++marks;
+        return index;
+    }
+
+    public void release() {
+        --marks;
+    }
+
+    public boolean isMarked() {
+        return marks > 0;
+    }
+
+    public int seek(final int index) {
+        if (index < base || index - base >= size) {
+            throw new IllegalArgumentException("Token " + index + " is not buffered");
+        }
+        this.index = index;
+        return types[index - base];
+    }
+
+    @Override
+    public int getTypeId() {
+        return types[index - base];
+    }
+
+    @Override
+    public long getStart() {
+        return starts[index - base];
+    }
+
+    @Override
+    public long getEnd() {
+        return ends[index - base];
+    }
+
+    @Override
+    public LineIndex getLines() {
+        return source.getLines();
+    }
+
+    @Override
+    public TokenData getData() {
+        if (data != null) {
+            return data[index - base];
+        }
+        return factory.create(types[index - base], starts[index - base], ends[index - base]);
+    }
+}
@@ -0,0 +1,17 @@
+package runtime;
+
+public interface TokenCursor {
+    int advance() throws LexingException;
+
+    int getTypeId();
+
+    long getStart();
+
+    long getEnd();
+
+    TokenData getData();
+
+    default LineIndex getLines() {
+        return null;
+    }
+}
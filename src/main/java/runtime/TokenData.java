@@ -1,21 +1,51 @@
 package runtime;
 
-import java.util.regex.Pattern;
-
 public class TokenData {
     private final String name;
-    private final String text;
+    private final CharSequence source;
+    private final int from;
+    private final int to;
+    private final long start;
+    private String text;
 
     public TokenData(final String name, final String text) {
+        this(name, text, 0);
+    }
+
+    public TokenData(final String name, final String text, final long start) {
         this.name = name;
+        this.source = text;
+        this.from = 0;
+        this.to = text.length();
+        this.start = start;
         this.text = text;
     }
 
+    public TokenData(final String name, final CharSequence source, final int from, final int to) {
+        this.name = name;
+        this.source = source;
+        this.from = from;
+        this.to = to;
+        this.start = from;
+        this.text = null;
+    }
+
     public String getText() {
+        if (text == null) {
+            text = source.subSequence(from, to).toString();
+        }
         return text;
     }
 
     public String getName() {
         return name;
     }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return start + (to - from);
+    }
 }
@@ -0,0 +1,263 @@
+package runtime;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+public class TokenList implements TokenCursor {
+    public interface LexerFactory {
+        TokenCursor create(CharSequence text);
+    }
+
+    public static class Damage {
+        private final int from;
+        private final int oldTo;
+        private final int newTo;
+
+        Damage(final int from, final int oldTo, final int newTo) {
+            this.from = from;
+            this.oldTo = oldTo;
+            this.newTo = newTo;
+        }
+
+        public int getFrom() {
+            return from;
+        }
+
+        public int getOldTo() {
+            return oldTo;
+        }
+
+        public int getNewTo() {
+            return newTo;
+        }
+    }
+
+    private final static int MIN_GAP = 64;
+
+    private final LexerFactory factory;
+    private final String[] names;
+    private final int end;
+    private final GapBuffer text;
+    private LineIndex lines;
+    private int[] types;
+    private int[] starts;
+    private int[] ends;
+    private int gapStart;
+    private int gapEnd;
+    private int size;
+    private int index;
+    private int slot;
+
+    public TokenList(final LexerFactory factory, final String[] names, final int end,
+                     final CharSequence text) throws LexingException {
+        this.factory = factory;
+        this.names = names;
+        this.end = end;
+        this.text = new GapBuffer(text);
+        this.lines = null;
+        this.types = new int[MIN_GAP];
+        this.starts = new int[MIN_GAP];
+        this.ends = new int[MIN_GAP];
+        this.gapStart = 0;
+        this.gapEnd = MIN_GAP;
+        this.size = 0;
+        this.index = -1;
+        this.slot = -1;
+        final TokenCursor lexer = factory.create(text);
+        int type;
+        do {
+            type = lexer.advance();
+            reserve(1);
+            insert(type, (int) lexer.getStart(), (int) lexer.getEnd());
+        } while (type != end);
+    }
+
+    private int slot(final int index) {
+        return index < gapStart ? index : index + (gapEnd - gapStart);
+    }
+
+    private int endAt(final int index) {
+        return index < gapStart ? ends[index] : ends[index + (gapEnd - gapStart)] + text.length();
+    }
+
+    private void moveGap(final int pos) {
+        final int length = text.length();
+        while (gapStart > pos) {
+            --gapStart;
+            --gapEnd;
+            types[gapEnd] = types[gapStart];
+            starts[gapEnd] = starts[gapStart] - length;
+            ends[gapEnd] = ends[gapStart] - length;
+        }
+        while (gapStart < pos) {
+            types[gapStart] = types[gapEnd];
+            starts[gapStart] = starts[gapEnd] + length;
+            ends[gapStart] = ends[gapEnd] + length;
+            ++gapStart;
+            ++gapEnd;
+        }
+    }
+
+    private void reserve(final int count) {
+        if (gapEnd - gapStart >= count) {
+            return;
+        }
+        final int tail = types.length - gapEnd;
+        final int capacity = Math.max(types.length * 2, size + count + MIN_GAP);
+        types = grow(types, capacity, tail);
+        starts = grow(starts, capacity, tail);
+        ends = grow(ends, capacity, tail);
+        gapEnd = capacity - tail;
+    }
+
+    private int[] grow(final int[] values, final int capacity, final int tail) {
+        final int[] grown = Arrays.copyOf(values, capacity);
+        System.arraycopy(values, gapEnd, grown, capacity - tail, tail);
+        return grown;
+    }
+
+    private void insert(final int type, final int start, final int stop) {
+        types[gapStart] = type;
+        starts[gapStart] = start;
+        ends[gapStart] = stop;
+        ++gapStart;
+        ++size;
+    }
+
+    public Damage edit(final int from, final int to, final CharSequence replacement) throws LexingException {
+        final int oldLength = text.length();
+        if (from < 0 || from > to || to > oldLength) {
+            throw new IndexOutOfBoundsException("Invalid edit range: [" + from + ", " + to + ")");
+        }
+        final int editEnd = from + replacement.length();
+
+        int low = 0;
+        int high = size - 1;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (endAt(mid) < from) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        final int first = Math.max(0, low - 1);
+        final int restart = first == 0 ? 0 : endAt(first - 1);
+
+        moveGap(first);
+        if (lines != null) {
+            lines.detach();
+            lines = null;
+        }
+        final String removed = text.subSequence(from, to);
+        text.replace(from, to, replacement);
+        final int length = text.length();
+
+        final TokenCursor lexer = factory.create(CharBuffer.wrap(text, restart, length));
+        int[] newTypes = new int[MIN_GAP];
+        int[] newStarts = new int[MIN_GAP];
+        int[] newEnds = new int[MIN_GAP];
+        int count = 0;
+        int resync = first;
+        while (true) {
+            final int type;
+            try {
+                type = lexer.advance();
+            } catch (LexingException e) {
+                final LineIndex edited = new LineIndex(text.toString());
+                text.replace(from, editEnd, removed);
+                throw e.rebase(restart, edited);
+            }
+            final int start = restart + (int) lexer.getStart();
+            final int stop = restart + (int) lexer.getEnd();
+            if (start >= editEnd) {
+                while (resync < size && (starts[slot(resync)] + oldLength < to || starts[slot(resync)] + length < start)) {
+                    ++resync;
+                }
+                if (resync < size && starts[slot(resync)] + length == start && ends[slot(resync)] + length == stop
+                        && types[slot(resync)] == type) {
+                    break;
+                }
+            }
+            if (count == newTypes.length) {
+                newTypes = Arrays.copyOf(newTypes, count * 2);
+                newStarts = Arrays.copyOf(newStarts, count * 2);
+                newEnds = Arrays.copyOf(newEnds, count * 2);
+            }
+            newTypes[count] = type;
+            newStarts[count] = start;
+            newEnds[count] = stop;
+            ++count;
+            if (type == end) {
+                resync = size;
+                break;
+            }
+        }
+
+        gapEnd += resync - first;
+        size -= resync - first;
+        reserve(count);
+        for (int i = 0; i < count; ++i) {
+            insert(newTypes[i], newStarts[i], newEnds[i]);
+        }
+        index = -1;
+        slot = -1;
+        return new Damage(first, resync, first + count);
+    }
+
+    public CharSequence getText() {
+        return text;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int seek(final int index) {
+        this.index = index;
+        this.slot = slot(index);
+        return types[slot];
+    }
+
+    @Override
+    public int advance() {
+        if (index + 1 < size) {
+            ++index;
+            slot = slot(index);
+        }
+        return types[slot];
+    }
+
+    @Override
+    public int getTypeId() {
+        return types[slot];
+    }
+
+    @Override
+    public long getStart() {
+        return slot < gapStart ? starts[slot] : starts[slot] + text.length();
+    }
+
+    @Override
+    public long getEnd() {
+        return slot < gapStart ? ends[slot] : ends[slot] + text.length();
+    }
+
+    @Override
+    public LineIndex getLines() {
+        if (lines == null) {
+            lines = new LineIndex(text);
+        }
+        return lines;
+    }
+
+    @Override
+    public TokenData getData() {
+        final int start = (int) getStart();
+        return new TokenData(names[types[slot]], text.subSequence(start, (int) getEnd()), start);
+    }
+}
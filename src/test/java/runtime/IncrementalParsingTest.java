@@ -0,0 +1,125 @@
+package runtime;
+
+import generators.CompiledGrammar;
+import generators.GeneratorOptions;
+import generators.InMemoryCompiler;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class IncrementalParsingTest {
+    private final static String[] FRAGMENTS = {"1", "23", "+", "-", "*", "^", "(", ")", " ", "\n", "\r\n", "7 * (2 + 3)", ""};
+
+    private static CompiledGrammar calc;
+    private static Method incremental;
+    private static Method edit;
+    private static Method mainRule;
+
+    @BeforeClass
+    public static void compile() throws Exception {
+        final String grammar = new String(Files.readAllBytes(Paths.get("Calc")), StandardCharsets.UTF_8);
+        final GeneratorOptions options = new GeneratorOptions();
+        options.parse("--incremental");
+        calc = new InMemoryCompiler().compile("Calc", grammar, options);
+        incremental = calc.getParserClass().getMethod("incremental", CharSequence.class);
+        edit = calc.getParserClass().getMethod("edit", int.class, int.class, CharSequence.class);
+        mainRule = calc.getParserClass().getMethod("mainRule");
+    }
+
+    private static String document(final Random random, final int fragments) {
+        final StringBuilder res = new StringBuilder();
+        for (int i = 0; i < fragments; ++i) {
+            res.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+        }
+        return res.toString();
+    }
+
+    private static String outcome(final Method method, final Object target, final Object... args) throws Exception {
+        try {
+            return String.valueOf(method.invoke(target, args));
+        } catch (InvocationTargetException e) {
+            if (!(e.getCause() instanceof ParseFailure)) {
+                throw e;
+            }
+            return e.getCause().getClass().getSimpleName() + ": " + e.getCause().getMessage();
+        }
+    }
+
+    private static String reparse(final String text) throws Exception {
+        try {
+            return String.valueOf(calc.parse(text));
+        } catch (ParseFailure e) {
+            return e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+    }
+
+    private static String relex(final String text) throws Exception {
+        try {
+            return tokens(calc.newLexer(text));
+        } catch (LexingException e) {
+            return e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+    }
+
+    private static String tokens(final TokenCursor lexer) throws LexingException {
+        final StringBuilder res = new StringBuilder();
+        final int end = calc.newLexer("").advance();
+        int type;
+        do {
+            type = lexer.advance();
+            res.append(type).append('@').append(lexer.getStart()).append('-').append(lexer.getEnd()).append(' ');
+        } while (type != end);
+        return res.toString();
+    }
+
+    @Test
+    public void editedTokensMatchFreshLexing() throws Exception {
+        final Random random = new Random(11);
+        final int end = calc.newLexer("").advance();
+        for (int doc = 0; doc < 100; ++doc) {
+            String text = document(random, 50);
+            final TokenList list = new TokenList(calc::newLexer, new String[end + 1], end, text);
+            for (int step = 0; step < 100; ++step) {
+                final int from = random.nextInt(text.length() + 1);
+                final int to = Math.min(text.length(), from + random.nextInt(6));
+                final String replacement = FRAGMENTS[random.nextInt(FRAGMENTS.length)];
+                list.edit(from, to, replacement);
+                text = text.substring(0, from) + replacement + text.substring(to);
+                assertEquals(text, list.getText().toString());
+                assertEquals(tokens(calc.newLexer(text)), tokens(list));
+            }
+        }
+    }
+
+    @Test
+    public void editedParsesMatchFullParses() throws Exception {
+        final Random random = new Random(7);
+        for (int doc = 0; doc < 100; ++doc) {
+            String text = document(random, 40);
+            final Object parser = incremental.invoke(null, text);
+            for (int step = 0; step < 100; ++step) {
+                final int from = random.nextInt(text.length() + 1);
+                final int to = Math.min(text.length(), from + random.nextInt(6));
+                final String replacement = random.nextInt(20) == 0 ? "x" : FRAGMENTS[random.nextInt(FRAGMENTS.length)];
+                final String edited = text.substring(0, from) + replacement + text.substring(to);
+                final String result = outcome(edit, parser, from, to, replacement);
+                if (result.equals("null")) {
+                    text = edited;
+                } else {
+                    assertEquals(relex(edited), result);
+                }
+                if (random.nextInt(3) != 0) {
+                    assertEquals(reparse(text), outcome(mainRule, parser));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package runtime;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MemoTableTest {
+    private static void memoize(final MemoTable memo, final int rule, final int start, final int end,
+                                final Object value) {
+        memo.exit(memo.enter(rule, start, null), end, value);
+    }
+
+    private static Object lookup(final MemoTable memo, final int rule, final int start) {
+        final MemoTable.Entry entry = memo.get(rule, start, null);
+        return entry == null ? null : entry.getValue();
+    }
+
+    @Test
+    public void entriesAfterDamageAreShifted() {
+        final MemoTable memo = new MemoTable(16);
+        memoize(memo, 0, 0, 3, "a");
+        memoize(memo, 1, 5, 7, "b");
+        memoize(memo, 2, 10, 12, "c");
+        assertEquals(3, memo.size());
+        memo.invalidate(new TokenList.Damage(5, 6, 8));
+        assertEquals(2, memo.size());
+        assertEquals("a", lookup(memo, 0, 0));
+        assertNull(lookup(memo, 1, 5));
+        assertNull(lookup(memo, 2, 10));
+        assertEquals("c", lookup(memo, 2, 12));
+        assertEquals(2, memo.get(2, 12, null).getLength());
+    }
+
+    @Test
+    public void damageKillsEnclosingEntries() {
+        final MemoTable memo = new MemoTable(8);
+        final int parent = memo.enter(0, 0, null);
+        memoize(memo, 1, 0, 2, "child");
+        memo.exit(parent, 4, "parent");
+        memo.invalidate(new TokenList.Damage(3, 4, 4));
+        assertEquals(1, memo.size());
+        assertNull(lookup(memo, 0, 0));
+        assertEquals("child", lookup(memo, 1, 0));
+
+        memo.clear();
+        final int outer = memo.enter(0, 0, null);
+        memoize(memo, 1, 0, 2, "child");
+        memo.exit(outer, 4, "parent");
+        memo.invalidate(new TokenList.Damage(1, 2, 2));
+        assertEquals(0, memo.size());
+        assertNull(lookup(memo, 0, 0));
+        assertNull(lookup(memo, 1, 0));
+    }
+
+    @Test
+    public void randomEditsMatchReference() {
+        final Random random = new Random(11);
+        final List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 40; ++i) {
+            expected.add(null);
+        }
+        final MemoTable memo = new MemoTable(expected.size());
+        for (int step = 0; step < 2000; ++step) {
+            memo.begin();
+            for (int i = 0; i < expected.size(); ++i) {
+                if (expected.get(i) == null && random.nextInt(2) == 0) {
+                    memoize(memo, 0, i, i + 1, step);
+                    expected.set(i, step);
+                }
+            }
+            final int from = random.nextInt(expected.size() + 1);
+            final int oldTo = Math.min(expected.size(), from + random.nextInt(4));
+            final int newTo = from + random.nextInt(4);
+            memo.invalidate(new TokenList.Damage(from, oldTo, newTo));
+            if (from > 0) {
+                expected.set(from - 1, null);
+            }
+            expected.subList(from, oldTo).clear();
+            for (int i = from; i < newTo; ++i) {
+                expected.add(i, null);
+            }
+            int alive = 0;
+            for (int i = 0; i < expected.size(); ++i) {
+                assertEquals("token " + i, expected.get(i), lookup(memo, 0, i));
+                alive += expected.get(i) == null ? 0 : 1;
+            }
+            assertEquals(alive, memo.size());
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package runtime;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PackratTableTest {
+    private final static int CAPACITY = 8;
+
+    private static void put(final PackratTable table, final int start) {
+        table.put(0, start, start + 1, null, "v" + start);
+    }
+
+    private static boolean contains(final PackratTable table, final int start) {
+        final int slot = table.find(0, start, null);
+        if (slot < 0) {
+            return false;
+        }
+        assertEquals(start + 1, table.getEnd(slot));
+        assertEquals("v" + start, table.getValue(slot));
+        return true;
+    }
+
+    @Test
+    public void entriesAreKeyedByRuleStartAndArguments() throws Exception {
+        final PackratTable table = new PackratTable(CAPACITY);
+        table.put(1, 5, 9, new Object[]{"a"}, "first");
+        table.put(2, 5, 7, new Object[]{"a"}, "second");
+        assertEquals("first", table.getValue(table.find(1, 5, new Object[]{"a"})));
+        assertEquals("second", table.getValue(table.find(2, 5, new Object[]{"a"})));
+        assertEquals(-1, table.find(1, 6, new Object[]{"a"}));
+        assertEquals(-1, table.find(1, 5, new Object[]{"b"}));
+        assertEquals(-1, table.find(1, 5, null));
+        table.put(1, 5, 6, new Object[]{"b"}, "third");
+        assertEquals("third", table.getValue(table.find(1, 5, new Object[]{"b"})));
+        assertEquals(-1, table.find(1, 5, new Object[]{"a"}));
+    }
+
+    @Test
+    public void failuresAreRethrown() throws Exception {
+        final PackratTable table = new PackratTable(CAPACITY);
+        final ParsingException failure = new ParsingException("failed");
+        table.putFailure(3, 4, null, failure);
+        final int slot = table.find(3, 4, null);
+        try {
+            table.rethrow(slot);
+            fail("Expected the stored failure");
+        } catch (ParsingException e) {
+            assertSame(failure, e);
+        }
+        table.put(3, 5, 8, null, "ok");
+        table.rethrow(table.find(3, 5, null));
+    }
+
+    @Test
+    public void fullTableEvictsTheEarliestStart() {
+        final PackratTable table = new PackratTable(CAPACITY);
+        for (int start = 10; start < 10 + CAPACITY; ++start) {
+            put(table, start);
+        }
+        for (int start = 10; start < 10 + CAPACITY; ++start) {
+            assertTrue(contains(table, start));
+        }
+        put(table, 30);
+        assertTrue(!contains(table, 10));
+        for (int start = 11; start < 10 + CAPACITY; ++start) {
+            assertTrue(contains(table, start));
+        }
+        assertTrue(contains(table, 30));
+    }
+
+    @Test
+    public void entriesBelowWatermarkAreEvictedFirst() {
+        final PackratTable table = new PackratTable(CAPACITY);
+        for (int start = 10; start < 10 + CAPACITY; ++start) {
+            put(table, start);
+        }
+        table.setWatermark(14);
+        for (int start = 30; start < 34; ++start) {
+            put(table, start);
+        }
+        for (int start = 10; start < 14; ++start) {
+            assertTrue(!contains(table, start));
+        }
+        for (int start = 14; start < 10 + CAPACITY; ++start) {
+            assertTrue(contains(table, start));
+        }
+        for (int start = 30; start < 34; ++start) {
+            assertTrue(contains(table, start));
+        }
+    }
+
+    @Test
+    public void clearDropsEntriesAndWatermark() {
+        final PackratTable table = new PackratTable(CAPACITY);
+        for (int start = 0; start < CAPACITY; ++start) {
+            put(table, start);
+        }
+        table.setWatermark(CAPACITY);
+        table.clear();
+        for (int start = 0; start < CAPACITY; ++start) {
+            assertTrue(!contains(table, start));
+        }
+        for (int start = 0; start < CAPACITY; ++start) {
+            put(table, start);
+        }
+        put(table, CAPACITY);
+        assertTrue(!contains(table, 0));
+        assertTrue(contains(table, CAPACITY));
+    }
+
+    @Test
+    public void randomPutsNeverReturnStaleValues() {
+        final Random random = new Random(12);
+        final PackratTable table = new PackratTable(CAPACITY * 4);
+        final Map<Long, Integer> latest = new HashMap<>();
+        for (int step = 0; step < 20000; ++step) {
+            final int rule = random.nextInt(4);
+            final int start = random.nextInt(64);
+            final long key = ((long) rule << 32) | start;
+            if (random.nextInt(3) == 0) {
+                table.put(rule, start, start + step, null, step);
+                latest.put(key, step);
+                assertEquals(step, table.getValue(table.find(rule, start, null)));
+            } else {
+                final int slot = table.find(rule, start, null);
+                if (slot >= 0) {
+                    assertEquals(latest.get(key), table.getValue(slot));
+                    assertEquals(start + latest.get(key), table.getEnd(slot));
+                }
+            }
+            if (random.nextInt(500) == 0) {
+                table.setWatermark(random.nextInt(64));
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package runtime;
+
+import generators.CompiledGrammar;
+import generators.GeneratorOptions;
+import generators.InMemoryCompiler;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.reflect.Constructor;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ParallelLexerTest {
+    private final static String GRAMMAR = "header {\npackage words;\n}\n\n"
+            + "tokens [\n"
+            + "    WS := \"[ \\t\\n\\r]+\";\n"
+            + "    WORD := \"[a-z\u00e0-\u00ff\u20ac]+\";\n"
+            + "    NUMBER := \"[0-9]+\";\n"
+            + "    COMMA := \"[,]\";\n"
+            + "]\n\n"
+            + "ignore [\n    WS\n]\n\n"
+            + "start = S;\n\n"
+            + "rules [\n    S() -> res : int\n        := EPS {res = 0;}\n        ;\n]\n";
+    private final static String BOUNDARIES = "\t\n\r\r  ";
+    private final static String[] FRAGMENTS = {"caf\u00e9", "na\u00efve", "\u20ac", "word", "42", ",", " ", "\n",
+            "\r\n", "\t ", ""};
+    private final static Charset WINDOWS_1252 = Charset.forName("windows-1252");
+
+    private static Constructor<?> lexer;
+    private static String[] names;
+    private static int end;
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void compile() throws Exception {
+        final CompiledGrammar words = new InMemoryCompiler().compile("Words", GRAMMAR, new GeneratorOptions());
+        lexer = words.getLexerClass().getConstructor(CharInput.class);
+        end = words.newLexer("").advance();
+        names = new String[end + 1];
+        for (int i = 0; i < names.length; ++i) {
+            names[i] = "T" + i;
+        }
+        pool = new ForkJoinPool(4);
+    }
+
+    private static TokenCursor create(final CharInput input) {
+        try {
+            return (TokenCursor) lexer.newInstance(input);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String document(final Random random, final int fragments, final boolean errors) {
+        final StringBuilder res = new StringBuilder();
+        for (int i = 0; i < fragments; ++i) {
+            res.append(errors && random.nextInt(50) == 0 ? "?" : FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+        }
+        return res.toString();
+    }
+
+    private static String tokens(final TokenCursor cursor) {
+        final StringBuilder res = new StringBuilder();
+        try {
+            int type;
+            do {
+                type = cursor.advance();
+                res.append(type).append('@').append(cursor.getStart()).append('-').append(cursor.getEnd())
+                        .append(':').append(cursor.getData().getText()).append(' ');
+            } while (type != end);
+        } catch (LexingException e) {
+            return "error at " + e.getOffset();
+        }
+        return res.toString();
+    }
+
+    private static String parallel(final String text, final int chunk) {
+        try {
+            return tokens(new ParallelLexer(ParallelLexerTest::create, names, end, BOUNDARIES, text, pool, chunk));
+        } catch (LexingException e) {
+            return "error at " + e.getOffset();
+        }
+    }
+
+    private static String parallel(final Path path, final Charset charset, final int chunk) throws Exception {
+        try (final ParallelLexer cursor = new ParallelLexer(ParallelLexerTest::create, names, end, BOUNDARIES,
+                FileChannel.open(path, StandardOpenOption.READ), charset, pool, chunk)) {
+            return tokens(cursor);
+        } catch (LexingException e) {
+            return "error at " + e.getOffset();
+        }
+    }
+
+    @Test
+    public void heapChunksMatchSequentialLexing() throws Exception {
+        final Random random = new Random(15);
+        for (int doc = 0; doc < 300; ++doc) {
+            final String text = document(random, random.nextInt(120), doc % 3 == 0);
+            final String expected = tokens(create(new TextInput(text)));
+            assertEquals(text, expected, parallel(text, 1 + random.nextInt(24)));
+        }
+    }
+
+    @Test
+    public void mappedChunksMatchSequentialLexing() throws Exception {
+        final Random random = new Random(16);
+        final Path path = Files.createTempFile("parallel", ".txt");
+        try {
+            for (int doc = 0; doc < 200; ++doc) {
+                final String text = document(random, random.nextInt(120), doc % 3 == 0);
+                final Charset charset = doc % 2 == 0 ? StandardCharsets.ISO_8859_1 : WINDOWS_1252;
+                Files.write(path, text.replace("\u20ac", charset == WINDOWS_1252 ? "\u20ac" : "e").getBytes(charset));
+                final String decoded = new String(Files.readAllBytes(path), charset);
+                final String expected = tokens(create(new TextInput(decoded)));
+                assertEquals(decoded, expected, parallel(path, charset, 1 + random.nextInt(24)));
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void multiByteCharsetsAreRejected() throws Exception {
+        final Path path = Files.createTempFile("parallel", ".txt");
+        try {
+            Files.write(path, "caf\u00e9 42".getBytes(StandardCharsets.UTF_8));
+            for (final Charset charset : new Charset[]{StandardCharsets.UTF_8, StandardCharsets.UTF_16}) {
+                try {
+                    parallel(path, charset, 4);
+                    fail("Expected " + charset + " to be rejected");
+                } catch (IllegalArgumentException e) {
+                    assertEquals("Charset " + charset + " is not a single-byte ASCII-compatible charset",
+                            e.getMessage());
+                }
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+}
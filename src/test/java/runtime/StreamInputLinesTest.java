@@ -0,0 +1,138 @@
+package runtime;
+
+import generators.CompiledGrammar;
+import generators.GeneratorOptions;
+import generators.InMemoryCompiler;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Constructor;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StreamInputLinesTest {
+    private final static String LINE = "1 + 2\n";
+    private final static int CAPACITY = 1 << 10;
+
+    private static Constructor<?> lexer;
+    private static int end;
+
+    @BeforeClass
+    public static void compile() throws Exception {
+        final String grammar = new String(Files.readAllBytes(Paths.get("Calc")), StandardCharsets.UTF_8);
+        final CompiledGrammar calc = new InMemoryCompiler().compile("Calc", grammar, new GeneratorOptions());
+        lexer = calc.getLexerClass().getConstructor(CharInput.class);
+        end = calc.newLexer("").advance();
+    }
+
+    private static class Lines extends Reader {
+        private final long count;
+        private final String tail;
+        private long pos;
+
+        Lines(final long count, final String tail) {
+            this.count = count;
+            this.tail = tail;
+            this.pos = 0;
+        }
+
+        @Override
+        public int read(final char[] buffer, final int from, final int length) {
+            final long size = count * LINE.length() + tail.length();
+            if (pos == size) {
+                return -1;
+            }
+            final int read = (int) Math.min(length, size - pos);
+            for (int i = 0; i < read; ++i, ++pos) {
+                final long line = pos / LINE.length();
+                buffer[from + i] = line < count ? LINE.charAt((int) (pos % LINE.length()))
+                        : tail.charAt((int) (pos - count * LINE.length()));
+            }
+            return read;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static TokenCursor lex(final CharInput input) throws Exception {
+        final TokenCursor cursor = (TokenCursor) lexer.newInstance(input);
+        cursor.getLines();
+        while (cursor.advance() != end) {
+        }
+        return cursor;
+    }
+
+    private static LexingException failure(final CharInput input) throws Exception {
+        try {
+            lex(input);
+        } catch (LexingException e) {
+            return e;
+        }
+        throw new AssertionError("Expected a lexing failure");
+    }
+
+    private static long used() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; ++i) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Test
+    public void streamingKeepsMemoryBounded() throws Exception {
+        final long before = used();
+        final TokenCursor cursor = lex(new StreamInput(new Lines(4000000, ""), CAPACITY));
+        final long after = used();
+        assertTrue("Retained " + (after - before) + " bytes", after - before < 8L << 20);
+        assertEquals(4000000L * LINE.length(), cursor.getStart());
+    }
+
+    @Test
+    public void errorInBufferHasLineAndColumn() throws Exception {
+        final LexingException e = failure(new StreamInput(new StringReader("1 +\n 2 .\n3"), CAPACITY));
+        assertEquals(7, e.getOffset());
+        assertEquals(2, e.getLine());
+        assertEquals(4, e.getColumn());
+        assertEquals("Unmatched data in input at line 2, column 4 (offset 7): \".\n3\"", e.getMessage());
+    }
+
+    @Test
+    public void errorAfterCompactionHasOffsetOnly() throws Exception {
+        final LexingException e = failure(new StreamInput(new Lines(1000, " ."), CAPACITY));
+        assertEquals(1000L * LINE.length() + 1, e.getOffset());
+        assertEquals(-1, e.getLine());
+        assertEquals(-1, e.getColumn());
+        assertEquals("Unmatched data in input at offset 6001: \".\"", e.getMessage());
+    }
+
+    @Test
+    public void trackedStreamResolvesCompactedLines() throws Exception {
+        final StreamInput input = new StreamInput(new Lines(1000, " ."), CAPACITY, true);
+        final LexingException e = failure(input);
+        assertEquals(1001, e.getLine());
+        assertEquals(2, e.getColumn());
+        assertEquals(1001, input.getLines().getLineCount());
+    }
+
+    @Test
+    public void releasedLinesAreReported() throws Exception {
+        final StreamInput input = new StreamInput(new Lines(1000, ""), CAPACITY);
+        lex(input);
+        try {
+            input.getLines().getLineCount();
+            fail("Expected released lines to be reported");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().startsWith("Lines before offset"));
+        }
+    }
+}